@@ -0,0 +1,171 @@
+package com.oney.WebRTCModule;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.oney.WebRTCModule.videoEffects.FrameDamageDetector;
+import com.oney.WebRTCModule.videoEffects.VideoFrameCopier;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoFrame;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits between a screen capturer and its video source, and drops the frames in which the screen
+ * did not change, so that a static screen (e.g. slides) costs neither encoding nor bandwidth.
+ *
+ * All the frames are sent on motion, and for a short while after it stops so that the encoder
+ * refines the last image. Past that, a frame is only sent every keep-alive interval, until the
+ * screen changes again.
+ *
+ * The damage detection may miss a small change, and the screen capturer stops delivering frames on
+ * a static screen, so the last dropped frame is held (see {@link VideoFrameCopier#hold(VideoFrame)},
+ * it is only copied if needed) and sent by a timer at the next keep-alive time if no frame is sent
+ * before.
+ */
+class AdaptiveScreenCaptureObserver implements CapturerObserver {
+    private static final String TAG = AdaptiveScreenCaptureObserver.class.getSimpleName();
+
+    private static final int DEFAULT_KEEP_ALIVE_INTERVAL_MS = 1000;
+
+    /**
+     * How long all the frames are sent after the last change.
+     */
+    private static final long MOTION_HOLD_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final CapturerObserver observer;
+    private final SurfaceTextureHelper textureHelper;
+    private final long keepAliveIntervalNs;
+
+    /**
+     * Only accessed on the capture thread.
+     */
+    private final FrameDamageDetector damageDetector = new FrameDamageDetector();
+    private VideoFrameCopier frameCopier;
+    private boolean keepAliveScheduled;
+    private boolean started;
+    private long lastChangeNs;
+    private long lastSentNs;
+
+    /**
+     * The capture time ({@link System#nanoTime()}) of the last frame sent, to which the timestamps of
+     * the frames sent by the timer are relative.
+     */
+    private long lastSentTimeNs;
+    private long framesCaptured;
+    private long framesDropped;
+
+    /**
+     * @param observer the observer of the video source
+     * @param textureHelper the helper of the capturer, on the thread of which the frames are delivered
+     * @param keepAliveIntervalMs the interval between frames while the screen is static, 0 for
+     *                            the default (1 second)
+     */
+    AdaptiveScreenCaptureObserver(
+            CapturerObserver observer, SurfaceTextureHelper textureHelper, int keepAliveIntervalMs) {
+        this.observer = observer;
+        this.textureHelper = textureHelper;
+        this.keepAliveIntervalNs = TimeUnit.MILLISECONDS.toNanos(
+                keepAliveIntervalMs > 0 ? keepAliveIntervalMs : DEFAULT_KEEP_ALIVE_INTERVAL_MS);
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        damageDetector.reset();
+        started = success;
+        if (success && frameCopier == null) {
+            frameCopier = new VideoFrameCopier(textureHelper);
+        }
+        observer.onCapturerStarted(success);
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        Log.d(TAG, "Dropped " + framesDropped + " of " + framesCaptured + " frames");
+        started = false;
+        if (frameCopier != null) {
+            frameCopier.clearHeldFrame();
+            frameCopier.release();
+            frameCopier = null;
+        }
+        observer.onCapturerStopped();
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        framesCaptured++;
+
+        long timestampNs = frame.getTimestampNs();
+        if (damageDetector.hasChanged(frame)) {
+            lastChangeNs = timestampNs;
+        }
+
+        boolean moving = timestampNs - lastChangeNs < MOTION_HOLD_NS;
+        if (!moving && timestampNs - lastSentNs < keepAliveIntervalNs && frameCopier != null) {
+            framesDropped++;
+            frameCopier.hold(frame);
+            scheduleKeepAlive(keepAliveIntervalNs - (timestampNs - lastSentNs));
+            return;
+        }
+
+        if (frameCopier != null) {
+            frameCopier.clearHeldFrame();
+        }
+        send(frame);
+    }
+
+    private void send(VideoFrame frame) {
+        lastSentNs = frame.getTimestampNs();
+        lastSentTimeNs = System.nanoTime();
+        observer.onFrameCaptured(frame);
+    }
+
+    /**
+     * Schedules the sending of the last dropped frame, on the capture thread.
+     */
+    private void scheduleKeepAlive(long delayNs) {
+        if (keepAliveScheduled) {
+            return;
+        }
+        keepAliveScheduled = true;
+
+        Handler handler = textureHelper.getHandler();
+        ThreadUtils.getScheduler().schedule(
+                () -> handler.post(this::sendKeepAlive), Math.max(0, delayNs), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends the last dropped frame, unless a frame was sent since it was dropped.
+     */
+    private void sendKeepAlive() {
+        keepAliveScheduled = false;
+        if (!started || !frameCopier.hasHeldFrame()) {
+            return;
+        }
+
+        long sinceSentNs = System.nanoTime() - lastSentTimeNs;
+        if (sinceSentNs < keepAliveIntervalNs) {
+            scheduleKeepAlive(keepAliveIntervalNs - sinceSentNs);
+            return;
+        }
+
+        VideoFrame droppedFrame = frameCopier.takeHeldFrame();
+        if (droppedFrame == null) {
+            return;
+        }
+
+        // The frame is sent later than it was captured, its timestamp has to follow the ones sent.
+        long timestampNs = Math.max(droppedFrame.getTimestampNs(), lastSentNs + sinceSentNs);
+        droppedFrame.getBuffer().retain();
+        VideoFrame frame = new VideoFrame(droppedFrame.getBuffer(), droppedFrame.getRotation(), timestampNs);
+        droppedFrame.release();
+
+        try {
+            send(frame);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A bounded, size-classed pool of {@link ByteBuffer}s. Buffers are grouped in
+ * power-of-two classes between {@link #MIN_CLASS_SIZE} and
+ * {@link #MAX_CLASS_SIZE}; larger requests are not pooled. The total capacity
+ * held by the pool never exceeds the given limit.
+ */
+class ByteBufferPool {
+    private static final int MIN_CLASS_SIZE = 256;
+    private static final int MAX_CLASS_SIZE = 256 * 1024;
+    private static final int MAX_BUFFERS_PER_CLASS = 4;
+
+    private final ArrayDeque<ByteBuffer>[] classes;
+    private final long maxPooledBytes;
+    private long pooledBytes;
+    private long hits;
+    private long misses;
+
+    @SuppressWarnings("unchecked")
+    ByteBufferPool(long maxPooledBytes) {
+        int count = Integer.numberOfTrailingZeros(MAX_CLASS_SIZE) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE) + 1;
+        this.classes = new ArrayDeque[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = new ArrayDeque<>(MAX_BUFFERS_PER_CLASS);
+        }
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Returns the index of the smallest class which fits {@code size} bytes,
+     * or -1 if the size is too big to be pooled.
+     */
+    private static int classIndex(int size) {
+        if (size > MAX_CLASS_SIZE) {
+            return -1;
+        }
+        int classSize = Math.max(MIN_CLASS_SIZE, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+        return Integer.numberOfTrailingZeros(classSize) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+    }
+
+    /**
+     * Gets a buffer with room for at least {@code size} bytes. Its position is
+     * 0 and its limit is {@code size}.
+     */
+    synchronized ByteBuffer acquire(int size) {
+        int index = classIndex(size);
+        ByteBuffer buffer = null;
+
+        if (index >= 0) {
+            buffer = classes[index].pollFirst();
+        }
+
+        if (buffer != null) {
+            hits++;
+            pooledBytes -= buffer.capacity();
+        } else {
+            misses++;
+            buffer = ByteBuffer.allocate(index >= 0 ? MIN_CLASS_SIZE << index : size);
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer back to the pool. It must not be used afterwards.
+     */
+    synchronized void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int index = classIndex(capacity);
+
+        if (index < 0 || (MIN_CLASS_SIZE << index) != capacity || classes[index].size() >= MAX_BUFFERS_PER_CLASS
+                || pooledBytes + capacity > maxPooledBytes) {
+            return;
+        }
+
+        classes[index].addFirst(buffer);
+        pooledBytes += capacity;
+    }
+
+    synchronized void clear() {
+        for (ArrayDeque<ByteBuffer> c : classes) {
+            c.clear();
+        }
+        pooledBytes = 0;
+    }
+
+    synchronized WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("hits", hits);
+        stats.putDouble("misses", misses);
+        stats.putDouble("pooledBytes", pooledBytes);
+        stats.putDouble("maxPooledBytes", maxPooledBytes);
+        return stats;
+    }
+}
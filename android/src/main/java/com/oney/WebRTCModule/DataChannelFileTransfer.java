@@ -0,0 +1,301 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.DataChannel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams a file over a data channel, or writes the binary messages received
+ * on a data channel to a file, without the payload crossing the bridge.
+ *
+ * No framing is added: the sender sends the raw file in binary chunks and the
+ * receiver writes the next {@code totalBytes} bytes of binary messages to the
+ * file. The file size (and any other metadata) is to be exchanged by the
+ * application. JS only gets progress events and the completion of a promise.
+ *
+ * The file is read and written on the I/O thread, so that the executor lane
+ * of the PeerConnection is never blocked on the disk: only the calls to the
+ * {@link DataChannel} run there.
+ */
+abstract class DataChannelFileTransfer {
+    private static final String TAG = WebRTCModule.TAG;
+
+    static final String PROGRESS_EVENT = "dataChannelFileTransferProgress";
+
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    protected final WebRTCModule webRTCModule;
+    protected final int peerConnectionId;
+    protected final String reactTag;
+    protected final long totalBytes;
+    private final Promise promise;
+
+    protected long transferredBytes;
+    private long lastProgressMs;
+    private volatile boolean finished;
+
+    DataChannelFileTransfer(
+            WebRTCModule webRTCModule, int peerConnectionId, String reactTag, long totalBytes, Promise promise) {
+        this.webRTCModule = webRTCModule;
+        this.peerConnectionId = peerConnectionId;
+        this.reactTag = reactTag;
+        this.totalBytes = totalBytes;
+        this.promise = promise;
+    }
+
+    abstract String getDirection();
+
+    abstract void close();
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    protected void reportProgress(boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - lastProgressMs < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgressMs = now;
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putString("reactTag", reactTag);
+        params.putString("direction", getDirection());
+        params.putDouble("bytesTransferred", transferredBytes);
+        params.putDouble("totalBytes", totalBytes);
+
+        webRTCModule.sendEvent(PROGRESS_EVENT, params);
+    }
+
+    /**
+     * Completes the transfer, successfully if {@code error} is {@code null}.
+     * Must be called on the thread which owns the transfer (see the
+     * subclasses), the file is closed on the I/O thread.
+     */
+    void finish(String error) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        ThreadUtils.runOnIoExecutor("dataChannelCloseFile", this::close);
+
+        if (error == null) {
+            reportProgress(/* force */ true);
+            promise.resolve(transferredBytes);
+        } else {
+            Log.w(TAG, "Data channel file transfer (" + getDirection() + ") failed: " + error);
+            promise.reject("E_OPERATION_ERROR", error);
+        }
+    }
+
+    /**
+     * Sends a file in binary chunks. The channel is kept filled up to
+     * {@link #HIGH_WATER_MARK} bytes; {@link #pump()} is called again when
+     * the buffered amount drops to {@link #LOW_WATER_MARK}.
+     *
+     * The state of the transfer is owned by the executor lane of the
+     * PeerConnection. Chunks are read one at a time on the I/O thread, then
+     * sent on the lane.
+     */
+    static class Sender extends DataChannelFileTransfer {
+        static final long HIGH_WATER_MARK = 1024 * 1024;
+        static final long LOW_WATER_MARK = 256 * 1024;
+
+        private final DataChannel dataChannel;
+        private final InputStream inputStream;
+        private final byte[] chunk;
+
+        /**
+         * Whether a chunk is being read, in which case {@link #chunk} belongs
+         * to the I/O thread.
+         */
+        private boolean reading;
+
+        Sender(WebRTCModule webRTCModule, int peerConnectionId, String reactTag, DataChannel dataChannel,
+                InputStream inputStream, long totalBytes, int chunkSize, Promise promise) {
+            super(webRTCModule, peerConnectionId, reactTag, totalBytes, promise);
+            this.dataChannel = dataChannel;
+            this.inputStream = inputStream;
+            this.chunk = new byte[chunkSize];
+        }
+
+        @Override
+        String getDirection() {
+            return "send";
+        }
+
+        /**
+         * Reads and sends chunks until the channel is full or the file is
+         * done. Must be called on the executor lane of the PeerConnection.
+         */
+        void pump() {
+            if (isFinished() || reading) {
+                return;
+            }
+
+            try {
+                if (dataChannel.bufferedAmount() >= HIGH_WATER_MARK) {
+                    return;
+                }
+            } catch (IllegalStateException e) {
+                // The DataChannel was disposed.
+                finish(e.getMessage());
+                return;
+            }
+
+            reading = true;
+            ThreadUtils.runOnIoExecutor("dataChannelReadFile", this::read);
+        }
+
+        /**
+         * Reads the next chunk, on the I/O thread, and hands it to the lane.
+         */
+        private void read() {
+            int length;
+            String error = null;
+            try {
+                length = readChunk();
+            } catch (IOException e) {
+                length = -1;
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+
+            int chunkLength = length;
+            String readError = error;
+            ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSendFile", () -> send(chunkLength, readError));
+        }
+
+        private void send(int length, String error) {
+            reading = false;
+            if (isFinished()) {
+                return;
+            }
+            if (error != null) {
+                finish(error);
+                return;
+            }
+            if (length <= 0) {
+                finish(null);
+                return;
+            }
+
+            try {
+                // DataChannel.send() copies the data, so the chunk can be reused.
+                DataChannel.Buffer buffer = new DataChannel.Buffer(ByteBuffer.wrap(chunk, 0, length), true);
+                if (!dataChannel.send(buffer)) {
+                    finish("Failed to send chunk");
+                    return;
+                }
+            } catch (IllegalStateException e) {
+                // The DataChannel was disposed.
+                finish(e.getMessage());
+                return;
+            }
+
+            transferredBytes += length;
+            reportProgress(/* force */ false);
+            pump();
+        }
+
+        private int readChunk() throws IOException {
+            int length = 0;
+            while (length < chunk.length) {
+                int read = inputStream.read(chunk, length, chunk.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return length;
+        }
+
+        @Override
+        void close() {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // Nothing we can do about it.
+            }
+        }
+    }
+
+    /**
+     * Writes the next {@code totalBytes} bytes of binary messages to a file.
+     * The state of the transfer, except for {@link #routedBytes}, is owned by
+     * the I/O thread.
+     */
+    static class Receiver extends DataChannelFileTransfer {
+        private final OutputStream outputStream;
+
+        /**
+         * Bytes handed to this receiver so far. Updated on the thread which
+         * delivers messages, as opposed to {@link #transferredBytes} which
+         * tracks what was written.
+         */
+        private long routedBytes;
+
+        Receiver(WebRTCModule webRTCModule, int peerConnectionId, String reactTag, OutputStream outputStream,
+                long totalBytes, Promise promise) {
+            super(webRTCModule, peerConnectionId, reactTag, totalBytes, promise);
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        String getDirection() {
+            return "receive";
+        }
+
+        /**
+         * Accounts for a message about to be written.
+         *
+         * @return Whether the message completes the file, in which case no more
+         * messages are to be routed to this receiver.
+         */
+        boolean route(int length) {
+            routedBytes += length;
+            return routedBytes >= totalBytes;
+        }
+
+        /**
+         * Writes a chunk. Must be called on the I/O thread.
+         */
+        void write(byte[] bytes) {
+            if (isFinished()) {
+                return;
+            }
+
+            try {
+                outputStream.write(bytes);
+                transferredBytes += bytes.length;
+                if (transferredBytes >= totalBytes) {
+                    finish(transferredBytes > totalBytes ? "Received more data than expected" : null);
+                } else {
+                    reportProgress(/* force */ false);
+                }
+            } catch (IOException e) {
+                finish(e.getMessage());
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                // Nothing we can do about it.
+            }
+        }
+    }
+}
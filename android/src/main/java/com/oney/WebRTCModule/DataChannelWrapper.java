@@ -1,6 +1,8 @@
 package com.oney.WebRTCModule;
 
+import android.os.SystemClock;
 import android.util.Base64;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 
@@ -9,19 +11,62 @@ import com.facebook.react.bridge.WritableMap;
 
 import org.webrtc.DataChannel;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 
 class DataChannelWrapper implements DataChannel.Observer {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Upper bound of the memory kept around for reuse by the send buffer pool
+     * of each data channel.
+     */
+    private static final long SEND_BUFFER_POOL_BYTES = 512 * 1024;
+
     private final String reactTag;
     private final DataChannel mDataChannel;
     private final int peerConnectionId;
     private final WebRTCModule webRTCModule;
 
+    /**
+     * Buffered amount changes are only reported to JS when the amount drops
+     * to or below this threshold, and (optionally) every
+     * {@link #bufferedAmountIntervalMs} while data is being sent.
+     */
+    private volatile long bufferedAmountLowThreshold;
+    private final long bufferedAmountIntervalMs;
+    private long lastBufferedAmountEventMs;
+
+    /**
+     * Text messages are encoded into pooled buffers: {@link DataChannel#send}
+     * copies the data, so the buffers can be reused right after sending. Sends
+     * happen on the executor lane of the PeerConnection, so the encoder is not
+     * shared. Binary messages are decoded by {@link Base64}, into an array of
+     * their own.
+     */
+    private final ByteBufferPool sendBufferPool = new ByteBufferPool(SEND_BUFFER_POOL_BYTES);
+    private final CharsetEncoder utf8Encoder = StandardCharsets.UTF_8.newEncoder()
+                                                       .onMalformedInput(CodingErrorAction.REPLACE)
+                                                       .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The file transfers in progress, if any. There can be at most one in
+     * each direction.
+     */
+    @Nullable
+    private volatile DataChannelFileTransfer.Sender fileSender;
+    @Nullable
+    private volatile DataChannelFileTransfer.Receiver fileReceiver;
+
     DataChannelWrapper(WebRTCModule webRTCModule, int peerConnectionId, String reactTag, DataChannel dataChannel) {
         this.webRTCModule = webRTCModule;
         this.peerConnectionId = peerConnectionId;
         this.reactTag = reactTag;
         mDataChannel = dataChannel;
+        bufferedAmountIntervalMs = WebRTCModuleOptions.getInstance().dataChannelBufferedAmountIntervalMs;
     }
 
     public DataChannel getDataChannel() {
@@ -32,6 +77,123 @@ class DataChannelWrapper implements DataChannel.Observer {
         return reactTag;
     }
 
+    ByteBufferPool getSendBufferPool() {
+        return sendBufferPool;
+    }
+
+    /**
+     * Sends a message on the data channel. JS counts the message in the
+     * buffered amount as soon as it is sent, so the actual buffered amount is
+     * reported if it could not be.
+     *
+     * @param data The message, Base64 encoded if {@code type} is binary.
+     * @param type Either "text" or "binary".
+     * @return Whether the message was queued for sending.
+     */
+    boolean send(String data, String type) {
+        boolean sent = sendMessage(data, type);
+        if (!sent) {
+            sendBufferedAmountEvent(mDataChannel.bufferedAmount());
+        }
+        return sent;
+    }
+
+    private boolean sendMessage(String data, String type) {
+        boolean binary;
+        if ("text".equals(type)) {
+            binary = false;
+        } else if ("binary".equals(type)) {
+            binary = true;
+        } else {
+            Log.e(TAG, "Unsupported data type: " + type);
+            return false;
+        }
+
+        if (binary) {
+            byte[] bytes;
+            try {
+                bytes = Base64.decode(data, Base64.NO_WRAP);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "DataChannel send() invalid Base64 data");
+                return false;
+            }
+            return mDataChannel.send(new DataChannel.Buffer(ByteBuffer.wrap(bytes), true));
+        }
+
+        long length = utf8Length(data);
+        if (length > Integer.MAX_VALUE) {
+            Log.e(TAG, "DataChannel send() message too large: " + length);
+            return false;
+        }
+
+        ByteBuffer byteBuffer = sendBufferPool.acquire((int) length);
+        try {
+            utf8Encoder.reset();
+            utf8Encoder.encode(CharBuffer.wrap(data), byteBuffer, true);
+            utf8Encoder.flush(byteBuffer);
+            byteBuffer.flip();
+            return mDataChannel.send(new DataChannel.Buffer(byteBuffer, false));
+        } finally {
+            sendBufferPool.release(byteBuffer);
+        }
+    }
+
+    /**
+     * Computes an upper bound of the number of bytes the given string takes
+     * once UTF-8 encoded. It is exact unless the string has unpaired surrogates.
+     */
+    private static long utf8Length(String str) {
+        long length = 0;
+        for (int i = 0, n = str.length(); i < n; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(str.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Starts streaming a file. Must be called on the executor lane of the
+     * PeerConnection.
+     *
+     * @return Whether the transfer was started, it is not if another file is
+     * being sent.
+     */
+    boolean sendFile(DataChannelFileTransfer.Sender sender) {
+        DataChannelFileTransfer.Sender current = fileSender;
+        if (current != null && !current.isFinished()) {
+            return false;
+        }
+
+        fileSender = sender;
+        sender.pump();
+        return true;
+    }
+
+    /**
+     * Starts writing the binary messages to a file, until it is complete.
+     *
+     * @return Whether the transfer was started, it is not if another file is
+     * being received.
+     */
+    boolean receiveFile(DataChannelFileTransfer.Receiver receiver) {
+        DataChannelFileTransfer.Receiver current = fileReceiver;
+        if (current != null && !current.isFinished()) {
+            return false;
+        }
+
+        fileReceiver = receiver;
+        return true;
+    }
+
     @Nullable
     public String dataChannelStateString(DataChannel.State dataChannelState) {
         switch (dataChannelState) {
@@ -47,8 +209,44 @@ class DataChannelWrapper implements DataChannel.Observer {
         return null;
     }
 
+    public void setBufferedAmountLowThreshold(long threshold) {
+        bufferedAmountLowThreshold = threshold;
+    }
+
     @Override
-    public void onBufferedAmountChange(long amount) {
+    public void onBufferedAmountChange(long previousAmount) {
+        long amount = mDataChannel.bufferedAmount();
+
+        DataChannelFileTransfer.Sender sender = fileSender;
+        if (sender != null && previousAmount > DataChannelFileTransfer.Sender.LOW_WATER_MARK
+                && amount <= DataChannelFileTransfer.Sender.LOW_WATER_MARK) {
+            ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSendFile", sender::pump);
+        }
+
+        boolean drained = isDrainToThreshold(previousAmount, amount, bufferedAmountLowThreshold);
+        long now = SystemClock.elapsedRealtime();
+
+        if (!drained
+                && (bufferedAmountIntervalMs <= 0 || now - lastBufferedAmountEventMs < bufferedAmountIntervalMs)) {
+            return;
+        }
+        lastBufferedAmountEventMs = now;
+
+        sendBufferedAmountEvent(amount);
+    }
+
+    /**
+     * Tells whether a change of the buffered amount is reported right away:
+     * any drop which ends at or below the threshold, whatever the previous
+     * amount. JS counts the messages as soon as they are sent, so its amount
+     * may be above the threshold while the native one never was, and it fires
+     * {@code bufferedamountlow} once it learns of the drop.
+     */
+    static boolean isDrainToThreshold(long previousAmount, long amount, long threshold) {
+        return amount < previousAmount && amount <= threshold;
+    }
+
+    private void sendBufferedAmountEvent(long amount) {
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
@@ -59,15 +257,35 @@ class DataChannelWrapper implements DataChannel.Observer {
 
     @Override
     public void onMessage(DataChannel.Buffer buffer) {
+        DataChannelFileTransfer.Receiver receiver = fileReceiver;
+        if (receiver != null && buffer.binary) {
+            // Messages are routed here, in order, and the file is written on the
+            // I/O thread so this (network) thread is not blocked on the disk.
+            byte[] chunk = new byte[buffer.data.remaining()];
+            buffer.data.get(chunk);
+            if (receiver.route(chunk.length)) {
+                fileReceiver = null;
+            }
+            ThreadUtils.runOnIoExecutor("dataChannelReceiveFile", () -> receiver.write(chunk));
+            return;
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
 
+        // The buffer is only valid for the duration of this call. Avoid copying it
+        // when it is backed by an array, and copy it only once otherwise (the
+        // native buffer is direct).
         byte[] bytes;
+        int offset;
+        int length = buffer.data.remaining();
         if (buffer.data.hasArray()) {
             bytes = buffer.data.array();
+            offset = buffer.data.arrayOffset() + buffer.data.position();
         } else {
-            bytes = new byte[buffer.data.remaining()];
+            bytes = new byte[length];
+            offset = 0;
             buffer.data.get(bytes);
         }
 
@@ -75,10 +293,10 @@ class DataChannelWrapper implements DataChannel.Observer {
         String data;
         if (buffer.binary) {
             type = "binary";
-            data = Base64.encodeToString(bytes, Base64.NO_WRAP);
+            data = Base64.encodeToString(bytes, offset, length, Base64.NO_WRAP);
         } else {
             type = "text";
-            data = new String(bytes, StandardCharsets.UTF_8);
+            data = new String(bytes, offset, length, StandardCharsets.UTF_8);
         }
         params.putString("type", type);
         params.putString("data", data);
@@ -88,12 +306,34 @@ class DataChannelWrapper implements DataChannel.Observer {
 
     @Override
     public void onStateChange() {
+        DataChannel.State state = mDataChannel.state();
+        if (state == DataChannel.State.CLOSING || state == DataChannel.State.CLOSED) {
+            abortFileTransfers("The data channel was closed");
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
         params.putInt("id", mDataChannel.id());
-        params.putString("state", dataChannelStateString(mDataChannel.state()));
+        params.putString("state", dataChannelStateString(state));
 
         webRTCModule.sendEvent("dataChannelStateChanged", params);
     }
+
+    /**
+     * Fails the file transfers in progress, if any.
+     */
+    void abortFileTransfers(String reason) {
+        DataChannelFileTransfer.Sender sender = fileSender;
+        DataChannelFileTransfer.Receiver receiver = fileReceiver;
+        fileSender = null;
+        fileReceiver = null;
+
+        if (sender != null) {
+            ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSendFile", () -> sender.finish(reason));
+        }
+        if (receiver != null) {
+            ThreadUtils.runOnIoExecutor("dataChannelReceiveFile", () -> receiver.finish(reason));
+        }
+    }
 }
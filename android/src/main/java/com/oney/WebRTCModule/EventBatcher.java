@@ -0,0 +1,96 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces high-rate events (ICE candidates, data channel messages, etc.)
+ * so that they cross the bridge as a single {@link #BATCH_EVENT_NAME} event
+ * holding an array of events. Events are buffered for at most
+ * {@code windowMs} or until {@code maxEvents} are pending.
+ *
+ * Any other event is latency-critical: it flushes the pending events first
+ * and is then emitted right away, so the order in which events are sent is
+ * always preserved.
+ */
+class EventBatcher {
+    static final String BATCH_EVENT_NAME = "eventBatch";
+
+    private static final int DEFAULT_MAX_EVENTS = 64;
+
+    /**
+     * The events which may be delayed in order to be batched.
+     */
+    private static final Set<String> BATCHED_EVENTS = new HashSet<>(Arrays.asList("peerConnectionGotICECandidate",
+            "dataChannelDidChangeBufferedAmount",
+            "dataChannelReceiveMessage",
+            "mediaStreamTrackMuteChanged"));
+
+    interface Emitter {
+        void emit(String eventName, Object data);
+    }
+
+    private final Emitter emitter;
+    private final long windowMs;
+    private final int maxEvents;
+
+    private final List<String> pendingNames = new ArrayList<>();
+    private final List<ReadableMap> pendingParams = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+
+    EventBatcher(Emitter emitter, long windowMs, int maxEvents) {
+        this.emitter = emitter;
+        this.windowMs = windowMs;
+        this.maxEvents = maxEvents > 0 ? maxEvents : DEFAULT_MAX_EVENTS;
+    }
+
+    synchronized void send(String eventName, ReadableMap params) {
+        if (!BATCHED_EVENTS.contains(eventName)) {
+            flush();
+            emitter.emit(eventName, params);
+            return;
+        }
+
+        pendingNames.add(eventName);
+        pendingParams.add(params);
+
+        if (pendingNames.size() >= maxEvents) {
+            flush();
+        } else if (flushTask == null) {
+            flushTask = ThreadUtils.getScheduler().schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void flush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+
+        if (pendingNames.isEmpty()) {
+            return;
+        }
+
+        WritableArray events = Arguments.createArray();
+        for (int i = 0; i < pendingNames.size(); i++) {
+            WritableMap event = Arguments.createMap();
+            event.putString("eventName", pendingNames.get(i));
+            event.putMap("data", pendingParams.get(i));
+            events.pushMap(event);
+        }
+        pendingNames.clear();
+        pendingParams.clear();
+
+        emitter.emit(BATCH_EVENT_NAME, events);
+    }
+}
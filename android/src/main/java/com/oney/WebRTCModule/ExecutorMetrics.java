@@ -0,0 +1,223 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records queue depth and task latency for the executors in {@link ThreadUtils}.
+ * Tasks are grouped by category (usually the name of the API which scheduled
+ * them). Recording is disabled by default and costs nothing until enabled.
+ */
+final class ExecutorMetrics {
+    /**
+     * Upper bounds (in milliseconds) of the histogram buckets. Values above
+     * the last bound go into an extra overflow bucket.
+     */
+    private static final double[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private volatile boolean enabled;
+
+    private final String[] laneNames;
+    private final AtomicInteger[] queueLengths;
+    private final AtomicInteger[] maxQueueLengths;
+    private final Map<String, TaskStats> taskStats = new ConcurrentHashMap<>();
+
+    ExecutorMetrics(String[] laneNames) {
+        this.laneNames = laneNames;
+        this.queueLengths = new AtomicInteger[laneNames.length];
+        this.maxQueueLengths = new AtomicInteger[laneNames.length];
+        for (int i = 0; i < laneNames.length; i++) {
+            queueLengths[i] = new AtomicInteger();
+            maxQueueLengths[i] = new AtomicInteger();
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Wraps the given {@link Runnable} so that its wait and run time are
+     * recorded, if recording is enabled.
+     */
+    Runnable wrap(int lane, String category, Runnable runnable) {
+        if (!enabled) {
+            return runnable;
+        }
+
+        TaskStats stats = getTaskStats(category);
+        long enqueuedAt = onEnqueue(lane, stats);
+
+        return () -> {
+            long startedAt = onStart(lane, stats, enqueuedAt);
+            try {
+                runnable.run();
+            } finally {
+                stats.runTime.record(System.nanoTime() - startedAt);
+            }
+        };
+    }
+
+    /**
+     * Wraps the given {@link Callable} so that its wait and run time are
+     * recorded, if recording is enabled.
+     */
+    <T> Callable<T> wrap(int lane, String category, Callable<T> callable) {
+        if (!enabled) {
+            return callable;
+        }
+
+        TaskStats stats = getTaskStats(category);
+        long enqueuedAt = onEnqueue(lane, stats);
+
+        return () -> {
+            long startedAt = onStart(lane, stats, enqueuedAt);
+            try {
+                return callable.call();
+            } finally {
+                stats.runTime.record(System.nanoTime() - startedAt);
+            }
+        };
+    }
+
+    private TaskStats getTaskStats(String category) {
+        TaskStats stats = taskStats.get(category);
+        if (stats == null) {
+            TaskStats newStats = new TaskStats();
+            stats = taskStats.putIfAbsent(category, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    private long onEnqueue(int lane, TaskStats stats) {
+        int queueLength = queueLengths[lane].incrementAndGet();
+        updateMax(maxQueueLengths[lane], queueLength);
+        updateMax(stats.maxQueueLength, queueLength);
+        return System.nanoTime();
+    }
+
+    private long onStart(int lane, TaskStats stats, long enqueuedAt) {
+        queueLengths[lane].decrementAndGet();
+        long startedAt = System.nanoTime();
+        stats.waitTime.record(startedAt - enqueuedAt);
+        return startedAt;
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Serializes the recorded metrics.
+     *
+     * @param reset Whether the histograms and maximums should be cleared after
+     * taking the snapshot.
+     */
+    WritableMap snapshot(boolean reset) {
+        WritableMap result = Arguments.createMap();
+        result.putBoolean("enabled", enabled);
+        result.putDouble("timestamp", System.currentTimeMillis());
+
+        WritableArray lanes = Arguments.createArray();
+        for (int i = 0; i < laneNames.length; i++) {
+            WritableMap lane = Arguments.createMap();
+            lane.putString("name", laneNames[i]);
+            lane.putInt("queueLength", Math.max(0, queueLengths[i].get()));
+            lane.putInt("maxQueueLength", reset ? maxQueueLengths[i].getAndSet(0) : maxQueueLengths[i].get());
+            lanes.pushMap(lane);
+        }
+        result.putArray("lanes", lanes);
+
+        WritableMap tasks = Arguments.createMap();
+        for (Map.Entry<String, TaskStats> entry : taskStats.entrySet()) {
+            tasks.putMap(entry.getKey(), entry.getValue().serialize(reset));
+        }
+        result.putMap("tasks", tasks);
+
+        WritableArray bounds = Arguments.createArray();
+        for (double bound : BUCKET_BOUNDS_MS) {
+            bounds.pushDouble(bound);
+        }
+        result.putArray("bucketBoundsMs", bounds);
+
+        return result;
+    }
+
+    private static class TaskStats {
+        final Histogram waitTime = new Histogram();
+        final Histogram runTime = new Histogram();
+        final AtomicInteger maxQueueLength = new AtomicInteger();
+
+        WritableMap serialize(boolean reset) {
+            WritableMap map = Arguments.createMap();
+            map.putMap("waitTime", waitTime.serialize(reset));
+            map.putMap("runTime", runTime.serialize(reset));
+            map.putInt("maxQueueLength", reset ? maxQueueLength.getAndSet(0) : maxQueueLength.get());
+            return map;
+        }
+    }
+
+    /**
+     * A fixed-bucket latency histogram.
+     */
+    private static class Histogram {
+        private final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+        private long count;
+        private long totalNs;
+        private long maxNs;
+
+        synchronized void record(long durationNs) {
+            double durationMs = durationNs / 1e6;
+            int i = 0;
+            while (i < BUCKET_BOUNDS_MS.length && durationMs > BUCKET_BOUNDS_MS[i]) {
+                i++;
+            }
+            counts[i]++;
+            count++;
+            totalNs += durationNs;
+            if (durationNs > maxNs) {
+                maxNs = durationNs;
+            }
+        }
+
+        synchronized WritableMap serialize(boolean reset) {
+            WritableMap map = Arguments.createMap();
+            WritableArray buckets = Arguments.createArray();
+            for (long c : counts) {
+                buckets.pushDouble(c);
+            }
+            map.putArray("buckets", buckets);
+            map.putDouble("count", count);
+            map.putDouble("meanMs", count == 0 ? 0 : totalNs / 1e6 / count);
+            map.putDouble("maxMs", maxNs / 1e6);
+
+            if (reset) {
+                Arrays.fill(counts, 0);
+                count = 0;
+                totalNs = 0;
+                maxNs = 0;
+            }
+
+            return map;
+        }
+    }
+}
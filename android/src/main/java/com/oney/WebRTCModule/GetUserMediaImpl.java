@@ -29,11 +29,11 @@ import com.oney.WebRTCModule.videoEffects.VideoFrameProcessor;
 import org.webrtc.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -56,7 +56,7 @@ class GetUserMediaImpl {
      * {@link MediaStreamTrack}s created by {@code GetUserMediaImpl} mapped by
      * track ID.
      */
-    private final Map<String, TrackPrivate> tracks = new HashMap<>();
+    private final Map<String, TrackPrivate> tracks = new ConcurrentHashMap<>();
 
     private final WebRTCModule webRTCModule;
 
@@ -82,7 +82,7 @@ class GetUserMediaImpl {
 
                     mediaProjectionPermissionResultData = data;
 
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor("onActivityResult", () -> {
                         MediaProjectionService.launch(activity);
                         createScreenStream();
                     });
@@ -415,6 +415,7 @@ class GetUserMediaImpl {
 
         Log.d(TAG, "MediaStream id: " + streamId);
         webRTCModule.localStreams.put(streamId, mediaStream);
+        webRTCModule.streamIndex.put(streamId, mediaStream);
 
         successCallback.accept(streamId, tracksInfo);
     }
@@ -451,7 +452,14 @@ class GetUserMediaImpl {
         videoCaptureController.setCapturerEventsListener(eventsEmitter);
 
         VideoSource videoSource = pcFactory.createVideoSource(videoCapturer.isScreencast());
-        videoCapturer.initialize(surfaceTextureHelper, reactContext, videoSource.getCapturerObserver());
+        CapturerObserver capturerObserver = videoSource.getCapturerObserver();
+        WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
+        if (videoCapturer.isScreencast() && options.adaptiveScreenCapture) {
+            capturerObserver =
+                    new AdaptiveScreenCaptureObserver(capturerObserver, surfaceTextureHelper,
+                            options.screenCaptureKeepAliveIntervalMs);
+        }
+        videoCapturer.initialize(surfaceTextureHelper, reactContext, capturerObserver);
 
         VideoTrack track = pcFactory.createVideoTrack(id, videoSource);
 
@@ -465,14 +473,16 @@ class GetUserMediaImpl {
 
     /**
      * Set video effects to the TrackPrivate corresponding to the trackId with the help of VideoEffectProcessor
-     * corresponding to the names.
+     * corresponding to the names. If the track already has effects, its processors are swapped without
+     * replacing the VideoEffectProcessor, so the capture goes on without interruption. Unchanged frames are
+     * skipped on screen-sharing tracks.
      * @param trackId TrackPrivate id
      * @param names VideoEffectProcessor names
      */
     void setVideoEffects(String trackId, ReadableArray names) {
         TrackPrivate track = tracks.get(trackId);
 
-        if (track != null && track.videoCaptureController instanceof CameraCaptureController) {
+        if (track != null && track.mediaSource instanceof VideoSource && track.surfaceTextureHelper != null) {
             VideoSource videoSource = (VideoSource) track.mediaSource;
             SurfaceTextureHelper surfaceTextureHelper = track.surfaceTextureHelper;
 
@@ -483,7 +493,7 @@ class GetUserMediaImpl {
                                 .filter(name -> name instanceof String)
                                 .map(name -> {
                                     VideoFrameProcessor videoFrameProcessor =
-                                            ProcessorProvider.getProcessor((String) name);
+                                            ProcessorProvider.acquireProcessor((String) name);
                                     if (videoFrameProcessor == null) {
                                         Log.e(TAG, "no videoFrameProcessor associated with this name: " + name);
                                     }
@@ -492,15 +502,41 @@ class GetUserMediaImpl {
                                 .filter(Objects::nonNull)
                                 .collect(Collectors.toList());
 
-                VideoEffectProcessor videoEffectProcessor = new VideoEffectProcessor(processors, surfaceTextureHelper);
+                VideoEffectProcessor current = track.videoEffectProcessor;
+                if (current != null) {
+                    current.setProcessors(processors);
+                    return;
+                }
+
+                boolean async = WebRTCModuleOptions.getInstance().videoEffectsAsync;
+                VideoEffectProcessor videoEffectProcessor =
+                        new VideoEffectProcessor(processors, surfaceTextureHelper, async);
+                // With adaptive screen capture, the static frames are dropped before they get here.
+                videoEffectProcessor.setDamageDetectionEnabled(
+                        track.videoCaptureController instanceof ScreenCaptureController
+                        && !WebRTCModuleOptions.getInstance().adaptiveScreenCapture);
                 videoSource.setVideoProcessor(videoEffectProcessor);
+                track.setVideoEffectProcessor(videoEffectProcessor);
 
             } else {
                 videoSource.setVideoProcessor(null);
+                track.setVideoEffectProcessor(null);
             }
         }
     }
 
+    /**
+     * Gets the frame counters and per-processor latencies of the video effects of a track.
+     * @param trackId TrackPrivate id
+     * @return the stats, or null if the track has no video effects.
+     */
+    WritableMap getVideoEffectsStats(String trackId) {
+        TrackPrivate track = tracks.get(trackId);
+        VideoEffectProcessor videoEffectProcessor = track != null ? track.videoEffectProcessor : null;
+
+        return videoEffectProcessor != null ? videoEffectProcessor.getStats() : null;
+    }
+
     /**
      * Application/library-specific private members of local
      * {@code MediaStreamTrack}s created by {@code GetUserMediaImpl}.
@@ -521,6 +557,11 @@ class GetUserMediaImpl {
 
         private final SurfaceTextureHelper surfaceTextureHelper;
 
+        /**
+         * The {@code VideoEffectProcessor} set on {@link #mediaSource}, if any.
+         */
+        private volatile VideoEffectProcessor videoEffectProcessor;
+
         /**
          * Whether this object has been disposed or not.
          */
@@ -545,8 +586,25 @@ class GetUserMediaImpl {
             this.disposed = false;
         }
 
+        /**
+         * Sets the {@code VideoEffectProcessor} in use, the previous one is released.
+         */
+        void setVideoEffectProcessor(VideoEffectProcessor videoEffectProcessor) {
+            VideoEffectProcessor previous = this.videoEffectProcessor;
+            this.videoEffectProcessor = videoEffectProcessor;
+            if (previous != null) {
+                previous.release();
+            }
+        }
+
         public void dispose() {
             if (!disposed) {
+                if (videoEffectProcessor != null) {
+                    // Uninstall the processor before releasing it, the capturer may still be delivering frames.
+                    ((VideoSource) mediaSource).setVideoProcessor(null);
+                    setVideoEffectProcessor(null);
+                }
+
                 if (videoCaptureController != null) {
                     if (videoCaptureController.stopCapture()) {
                         videoCaptureController.dispose();
@@ -561,7 +619,10 @@ class GetUserMediaImpl {
 
                 if (surfaceTextureHelper != null) {
                     surfaceTextureHelper.stopListening();
-                    surfaceTextureHelper.dispose();
+                    // Dispose of the helper after the GL resources released above (e.g. by the video effects),
+                    // which were posted to its thread: its EGL context goes away with it.
+                    SurfaceTextureHelper helper = surfaceTextureHelper;
+                    helper.getHandler().post(helper::dispose);
                 }
 
                 mediaSource.dispose();
@@ -1,12 +1,12 @@
 package com.oney.WebRTCModule;
 
-import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
@@ -23,12 +23,15 @@ import org.webrtc.RtpTransceiver;
 import org.webrtc.SessionDescription;
 import org.webrtc.VideoTrack;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 class PeerConnectionObserver implements PeerConnection.Observer {
     private final static String TAG = WebRTCModule.TAG;
@@ -43,14 +46,22 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     final Map<String, MediaStreamTrack> remoteTracks;
     private final VideoTrackAdapter videoTrackAdapters;
     private final WebRTCModule webRTCModule;
+    private final boolean compactStats;
+    @Nullable
+    private StatsSubscription statsSubscription;
+    // Read from the JS thread by the synchronous QoS metrics getter.
+    @Nullable
+    private volatile QosMonitor qosMonitor;
 
     PeerConnectionObserver(WebRTCModule webRTCModule, int id) {
         this.webRTCModule = webRTCModule;
         this.id = id;
+        this.compactStats = WebRTCModuleOptions.getInstance().compactStatsEncoding;
         this.dataChannels = new HashMap<>();
         this.remoteStreamIds = new HashMap<>();
-        this.remoteStreams = new HashMap<>();
-        this.remoteTracks = new HashMap<>();
+        // Remote streams and tracks are looked up from other executor lanes (e.g. by WebRTCView).
+        this.remoteStreams = new ConcurrentHashMap<>();
+        this.remoteTracks = new ConcurrentHashMap<>();
         this.videoTrackAdapters = new VideoTrackAdapter(webRTCModule, id);
     }
 
@@ -68,9 +79,17 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         peerConnection.close();
     }
 
+    /**
+     * Disposes of the PeerConnection and of its remote tracks. Called on the
+     * global executor, which owns the tracks, while the executor lane of the
+     * PeerConnection waits: the state of the lane can be used.
+     */
     void dispose() {
         Log.d(TAG, "PeerConnection.dispose() for " + id);
 
+        unsubscribeStats();
+        stopQosMonitor();
+
         // Remove video track adapters
         for (MediaStreamTrack track : this.remoteTracks.values()) {
             if (track instanceof VideoTrack) {
@@ -82,6 +101,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         for (DataChannelWrapper dcw : dataChannels.values()) {
             DataChannel dataChannel = dcw.getDataChannel();
             dataChannel.unregisterObserver();
+            dcw.abortFileTransfers("The PeerConnection was disposed");
         }
 
         // At this point there should be no local MediaStreams in the associated
@@ -89,6 +109,9 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         // by the PeerConnection instance (RtpReceivers, RtpSenders, etc.)
         peerConnection.dispose();
 
+        for (String streamReactTag : remoteStreams.keySet()) {
+            webRTCModule.streamIndex.remove(streamReactTag);
+        }
         remoteStreamIds.clear();
         remoteStreams.clear();
         remoteTracks.clear();
@@ -208,6 +231,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         DataChannel dataChannel = dcw.getDataChannel();
         dataChannel.unregisterObserver();
         dataChannels.remove(reactTag);
+        dcw.abortFileTransfers("The data channel was disposed");
     }
 
     void dataChannelSend(String reactTag, String data, String type) {
@@ -217,25 +241,162 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return;
         }
 
-        byte[] byteArray;
-        if (type.equals("text")) {
-            byteArray = data.getBytes(StandardCharsets.UTF_8);
-        } else if (type.equals("binary")) {
-            byteArray = Base64.decode(data, Base64.NO_WRAP);
-        } else {
-            Log.e(TAG, "Unsupported data type: " + type);
+        dcw.send(data, type);
+    }
+
+    /**
+     * Sends the given messages in order, stopping at the first one which
+     * cannot be sent or when the buffered amount of the channel reaches
+     * {@code maxBufferedAmount} (if positive).
+     *
+     * @return The number of messages which were sent, or -1 if the data
+     * channel was not found.
+     */
+    int dataChannelSendBatch(String reactTag, ReadableArray messages, long maxBufferedAmount) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelSendBatch() dataChannel is null");
+            return -1;
+        }
+
+        DataChannel dataChannel = dcw.getDataChannel();
+        int sent = 0;
+        for (int i = 0, size = messages.size(); i < size; i++) {
+            if (maxBufferedAmount > 0 && dataChannel.bufferedAmount() >= maxBufferedAmount) {
+                break;
+            }
+
+            ReadableMap message = messages.getMap(i);
+            if (!dcw.send(message.getString("data"), message.getString("type"))) {
+                break;
+            }
+            sent++;
+        }
+
+        return sent;
+    }
+
+    void dataChannelSendFile(String reactTag, InputStream inputStream, long size, int chunkSize, Promise promise) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelSendFile() dataChannel is null");
+            closeQuietly(inputStream);
+            promise.reject(new Exception("DataChannel not found"));
+            return;
+        }
+
+        DataChannelFileTransfer.Sender sender = new DataChannelFileTransfer.Sender(
+                webRTCModule, id, reactTag, dcw.getDataChannel(), inputStream, size, chunkSize, promise);
+        if (!dcw.sendFile(sender)) {
+            closeQuietly(inputStream);
+            promise.reject(new Exception("A file is already being sent on this DataChannel"));
+        }
+    }
+
+    void dataChannelReceiveFile(String reactTag, OutputStream outputStream, long size, Promise promise) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelReceiveFile() dataChannel is null");
+            closeQuietly(outputStream);
+            promise.reject(new Exception("DataChannel not found"));
+            return;
+        }
+
+        DataChannelFileTransfer.Receiver receiver =
+                new DataChannelFileTransfer.Receiver(webRTCModule, id, reactTag, outputStream, size, promise);
+        if (!dcw.receiveFile(receiver)) {
+            closeQuietly(outputStream);
+            promise.reject(new Exception("A file is already being received on this DataChannel"));
+        }
+    }
+
+    /**
+     * Closes a file on the I/O thread, so the executor lane is not blocked on the disk.
+     */
+    private static void closeQuietly(Closeable closeable) {
+        ThreadUtils.runOnIoExecutor("dataChannelCloseFile", () -> {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing we can do about it.
+            }
+        });
+    }
+
+    WritableMap dataChannelGetBufferPoolStats(String reactTag) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelGetBufferPoolStats() dataChannel is null");
+            return null;
+        }
+
+        return dcw.getSendBufferPool().getStats();
+    }
+
+    void dataChannelSetBufferedAmountLowThreshold(String reactTag, long threshold) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelSetBufferedAmountLowThreshold() dataChannel is null");
             return;
         }
-        ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
-        DataChannel.Buffer buffer = new DataChannel.Buffer(byteBuffer, type.equals("binary"));
-        dcw.getDataChannel().send(buffer);
+
+        dcw.setBufferedAmountLowThreshold(threshold);
     }
 
-    void getStats(Promise promise) {
-        peerConnection.getStats(rtcStatsReport -> promise.resolve(StringUtils.statsToJSON(rtcStatsReport)));
+    void getStats(@Nullable StatsFilter filter, Promise promise) {
+        peerConnection.getStats(rtcStatsReport -> resolveStats(promise, rtcStatsReport, filter));
+    }
+
+    private void resolveStats(Promise promise, RTCStatsReport report, @Nullable StatsFilter filter) {
+        promise.resolve(StringUtils.statsToJSON(report, compactStats, filter));
+    }
+
+    /**
+     * Starts emitting the changes in stats every {@code intervalMs}, replacing
+     * the current subscription if any.
+     */
+    void subscribeStats(long intervalMs, @Nullable StatsFilter filter) {
+        unsubscribeStats();
+        statsSubscription = new StatsSubscription(webRTCModule, id, peerConnection, intervalMs, filter);
+    }
+
+    void unsubscribeStats() {
+        if (statsSubscription != null) {
+            statsSubscription.cancel();
+            statsSubscription = null;
+        }
+    }
+
+    /**
+     * Starts sampling the stats every {@code intervalMs} in order to derive QoS
+     * metrics over the last {@code windowSize} samples, replacing the current
+     * monitor if any.
+     */
+    void startQosMonitor(long intervalMs, int windowSize, boolean emitEvents) {
+        stopQosMonitor();
+        qosMonitor = new QosMonitor(webRTCModule, id, peerConnection, intervalMs, windowSize, emitEvents);
+    }
+
+    void stopQosMonitor() {
+        QosMonitor monitor = qosMonitor;
+        if (monitor != null) {
+            monitor.cancel();
+            qosMonitor = null;
+        }
+    }
+
+    @Nullable
+    WritableMap getQosMetrics() {
+        QosMonitor monitor = qosMonitor;
+        return monitor != null ? monitor.getMetrics() : null;
+    }
+
+    @Nullable
+    WritableMap getVideoTrackTelemetry(String trackId) {
+        return videoTrackAdapters.getTelemetry(trackId);
     }
 
-    public void receiverGetStats(String receiverId, Promise promise) {
+    public void receiverGetStats(String receiverId, @Nullable StatsFilter filter, Promise promise) {
         RtpReceiver targetReceiver = null;
         for (RtpReceiver r : peerConnection.getReceivers()) {
             if (r.id().equals(receiverId)) {
@@ -246,15 +407,14 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
         if (targetReceiver == null) {
             Log.w(TAG, "receiverGetStats(): Receiver ID " + receiverId + " not found");
-            promise.resolve(StringUtils.statsToJSON(new RTCStatsReport(0, new HashMap<>())));
+            resolveStats(promise, new RTCStatsReport(0, new HashMap<>()), filter);
             return;
         }
 
-        peerConnection.getStats(
-                targetReceiver, rtcStatsReport -> promise.resolve(StringUtils.statsToJSON(rtcStatsReport)));
+        peerConnection.getStats(targetReceiver, rtcStatsReport -> resolveStats(promise, rtcStatsReport, filter));
     }
 
-    public void senderGetStats(String senderId, Promise promise) {
+    public void senderGetStats(String senderId, @Nullable StatsFilter filter, Promise promise) {
         RtpSender targetSender = null;
         for (RtpSender s : peerConnection.getSenders()) {
             if (s.id().equals(senderId)) {
@@ -265,19 +425,18 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
         if (targetSender == null) {
             Log.w(TAG, "senderGetStats(): Sender ID " + senderId + " not found");
-            promise.resolve(StringUtils.statsToJSON(new RTCStatsReport(0, new HashMap<>())));
+            resolveStats(promise, new RTCStatsReport(0, new HashMap<>()), filter);
             return;
         }
 
-        peerConnection.getStats(
-                targetSender, rtcStatsReport -> promise.resolve(StringUtils.statsToJSON(rtcStatsReport)));
+        peerConnection.getStats(targetSender, rtcStatsReport -> resolveStats(promise, rtcStatsReport, filter));
     }
 
     @Override
     public void onIceCandidate(final IceCandidate candidate) {
         Log.d(TAG, "onIceCandidate");
 
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onIceCandidate", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
 
@@ -307,7 +466,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onIceConnectionChange", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("iceConnectionState", iceConnectionStateString(iceConnectionState));
@@ -317,7 +476,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onConnectionChange(PeerConnection.PeerConnectionState peerConnectionState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onConnectionChange", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("connectionState", peerConnectionStateString(peerConnectionState));
@@ -333,7 +492,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
         Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
 
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onIceGatheringChange", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("iceGatheringState", iceGatheringStateString(iceGatheringState));
@@ -355,7 +514,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onDataChannel(DataChannel dataChannel) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onDataChannel", () -> {
             final String reactTag = UUID.randomUUID().toString();
             DataChannelWrapper dcw = new DataChannelWrapper(webRTCModule, id, reactTag, dataChannel);
             dataChannels.put(reactTag, dcw);
@@ -386,7 +545,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onRenegotiationNeeded() {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onRenegotiationNeeded", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             webRTCModule.sendEvent("peerConnectionOnRenegotiationNeeded", params);
@@ -395,7 +554,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onSignalingChange(PeerConnection.SignalingState signalingState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onSignalingChange", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("signalingState", signalingStateString(signalingState));
@@ -411,7 +570,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onAddTrack(final RtpReceiver receiver, final MediaStream[] mediaStreams) {
         Log.d(TAG, "onAddTrack");
 
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onAddTrack", () -> {
             RtpTransceiver transceiver = null;
             for (RtpTransceiver t : this.peerConnection.getTransceivers()) {
                 if (Objects.equals(t.getReceiver().id(), receiver.id())) {
@@ -452,6 +611,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
                 // Make sure the stored stream is updated in case we get a new reference.
                 remoteStreams.put(streamReactTag, stream);
+                webRTCModule.streamIndex.put(streamReactTag, stream);
 
                 streams.pushMap(SerializeUtils.serializeStream(id, streamReactTag, stream));
             }
@@ -480,7 +640,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
      */
     @Override
     public void onRemoveTrack(RtpReceiver receiver) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "onRemoveTrack", () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", this.id);
             params.putString("receiverId", receiver.id());
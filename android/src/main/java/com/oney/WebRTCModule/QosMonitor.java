@@ -0,0 +1,314 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples the stats of a PeerConnection and derives QoS metrics
+ * (bitrates, packet loss, jitter, round-trip time, decoding time, etc.) over
+ * a rolling window of samples. The stats are read straight from the
+ * {@link RTCStatsReport}, they are never serialized.
+ *
+ * The metrics can be read at any time with {@link #getMetrics()} and are
+ * optionally emitted after each sample as a {@link #METRICS_EVENT} event.
+ */
+class QosMonitor {
+    static final String METRICS_EVENT = "peerConnectionQosMetrics";
+
+    /**
+     * How long a sample may take before it is considered lost, should
+     * getStats never call back (e.g. the PeerConnection was closed meanwhile).
+     */
+    private static final long PENDING_TIMEOUT_MS = 5000;
+
+    private final WebRTCModule webRTCModule;
+    private final int peerConnectionId;
+    private final PeerConnection peerConnection;
+    private final boolean emitEvents;
+    private final ScheduledFuture<?> future;
+
+    private final DoubleRingBuffer inboundKbps;
+    private final DoubleRingBuffer outboundKbps;
+    private final DoubleRingBuffer lossPercent;
+    private final DoubleRingBuffer jitterMs;
+    private final DoubleRingBuffer rttMs;
+    private final DoubleRingBuffer decodeMsPerFrame;
+    private final DoubleRingBuffer framesPerSecond;
+    private final DoubleRingBuffer freezes;
+
+    /**
+     * Totals of the previous sample, the metrics are derived from the
+     * difference with the current one.
+     */
+    private final Totals previous = new Totals();
+    private final Totals current = new Totals();
+    private boolean hasPrevious;
+    private long sampleCount;
+
+    /**
+     * Only accessed on the executor lane of the PeerConnection.
+     */
+    private boolean pending;
+    private long pendingSinceMs;
+    private int sampleId;
+    private volatile boolean cancelled;
+
+    QosMonitor(WebRTCModule webRTCModule, int peerConnectionId, PeerConnection peerConnection, long intervalMs,
+            int windowSize, boolean emitEvents) {
+        this.webRTCModule = webRTCModule;
+        this.peerConnectionId = peerConnectionId;
+        this.peerConnection = peerConnection;
+        this.emitEvents = emitEvents;
+
+        inboundKbps = new DoubleRingBuffer(windowSize);
+        outboundKbps = new DoubleRingBuffer(windowSize);
+        lossPercent = new DoubleRingBuffer(windowSize);
+        jitterMs = new DoubleRingBuffer(windowSize);
+        rttMs = new DoubleRingBuffer(windowSize);
+        decodeMsPerFrame = new DoubleRingBuffer(windowSize);
+        framesPerSecond = new DoubleRingBuffer(windowSize);
+        freezes = new DoubleRingBuffer(windowSize);
+
+        this.future = ThreadUtils.getScheduler().scheduleAtFixedRate(() -> {
+            ThreadUtils.runOnExecutor(peerConnectionId, "qosMonitor", this::sample);
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sampling. Must be called on the executor lane of the
+     * PeerConnection.
+     */
+    void cancel() {
+        cancelled = true;
+        pending = false;
+        future.cancel(false);
+    }
+
+    private void sample() {
+        // Skip a sample if the previous one has not completed yet, unless it is lost.
+        long nowMs = SystemClock.elapsedRealtime();
+        if (cancelled || (pending && nowMs - pendingSinceMs < PENDING_TIMEOUT_MS)) {
+            return;
+        }
+        pending = true;
+        pendingSinceMs = nowMs;
+
+        int id = ++sampleId;
+        peerConnection.getStats(report -> {
+            ThreadUtils.runOnExecutor(peerConnectionId, "qosMonitorSample", () -> onReport(id, report));
+        });
+    }
+
+    private void onReport(int id, RTCStatsReport report) {
+        // A report which comes after its sample timed out is stale.
+        if (cancelled || id != sampleId) {
+            return;
+        }
+        pending = false;
+
+        WritableMap metrics;
+        synchronized (this) {
+            current.reset(report.getTimestampUs());
+            for (RTCStats stats : report.getStatsMap().values()) {
+                current.add(stats);
+            }
+
+            if (hasPrevious) {
+                addSample();
+            }
+
+            previous.copyFrom(current);
+            hasPrevious = true;
+
+            metrics = emitEvents && sampleCount > 0 ? getMetrics() : null;
+        }
+
+        if (metrics != null) {
+            metrics.putInt("peerConnectionId", peerConnectionId);
+            webRTCModule.sendEvent(METRICS_EVENT, metrics);
+        }
+    }
+
+    private void addSample() {
+        double elapsedMs = (current.timestampUs - previous.timestampUs) / 1000.0;
+        if (elapsedMs <= 0) {
+            return;
+        }
+
+        // Counters may go backwards when streams go away, don't account for those.
+        inboundKbps.add(Math.max(0, current.bytesReceived - previous.bytesReceived) * 8 / elapsedMs);
+        outboundKbps.add(Math.max(0, current.bytesSent - previous.bytesSent) * 8 / elapsedMs);
+
+        double received = Math.max(0, current.packetsReceived - previous.packetsReceived);
+        double lost = Math.max(0, current.packetsLost - previous.packetsLost);
+        lossPercent.add(received + lost > 0 ? lost * 100 / (received + lost) : 0);
+
+        jitterMs.add(current.jitterMs);
+        if (current.rttMs >= 0) {
+            rttMs.add(current.rttMs);
+        }
+
+        double frames = Math.max(0, current.framesDecoded - previous.framesDecoded);
+        if (frames > 0) {
+            decodeMsPerFrame.add(Math.max(0, current.totalDecodeTimeMs - previous.totalDecodeTimeMs) / frames);
+        }
+        framesPerSecond.add(frames * 1000 / elapsedMs);
+        freezes.add(Math.max(0, current.freezeCount - previous.freezeCount));
+
+        sampleCount++;
+    }
+
+    /**
+     * Gets the metrics derived from the samples in the window.
+     */
+    synchronized WritableMap getMetrics() {
+        WritableMap metrics = Arguments.createMap();
+        metrics.putDouble("samples", sampleCount);
+        metrics.putDouble("inboundKbps", inboundKbps.mean());
+        metrics.putDouble("outboundKbps", outboundKbps.mean());
+        metrics.putDouble("lossPercent", lossPercent.mean());
+        metrics.putDouble("jitterMs", jitterMs.mean());
+        metrics.putDouble("jitterMsP95", jitterMs.percentile(95));
+        metrics.putDouble("rttMs", rttMs.mean());
+        metrics.putDouble("rttMsP95", rttMs.percentile(95));
+        metrics.putDouble("decodeMsPerFrame", decodeMsPerFrame.mean());
+        metrics.putDouble("framesPerSecond", framesPerSecond.mean());
+        metrics.putDouble("freezeCount", freezes.sum());
+        return metrics;
+    }
+
+    /**
+     * The totals of the counters in a stats report, over all streams.
+     */
+    private static final class Totals {
+        long timestampUs;
+        double bytesReceived;
+        double bytesSent;
+        double packetsReceived;
+        double packetsLost;
+        double framesDecoded;
+        double totalDecodeTimeMs;
+        double freezeCount;
+
+        // Gauges: the largest jitter of the inbound streams and the RTT of the
+        // selected candidate pair (-1 if unknown).
+        double jitterMs;
+        double rttMs;
+
+        void reset(long timestampUs) {
+            this.timestampUs = timestampUs;
+            bytesReceived = 0;
+            bytesSent = 0;
+            packetsReceived = 0;
+            packetsLost = 0;
+            framesDecoded = 0;
+            totalDecodeTimeMs = 0;
+            freezeCount = 0;
+            jitterMs = 0;
+            rttMs = -1;
+        }
+
+        void add(RTCStats stats) {
+            Map<String, Object> members = stats.getMembers();
+
+            switch (stats.getType()) {
+                case "inbound-rtp":
+                    bytesReceived += getDouble(members, "bytesReceived");
+                    packetsReceived += getDouble(members, "packetsReceived");
+                    packetsLost += getDouble(members, "packetsLost");
+                    framesDecoded += getDouble(members, "framesDecoded");
+                    totalDecodeTimeMs += getDouble(members, "totalDecodeTime") * 1000;
+                    freezeCount += getDouble(members, "freezeCount");
+                    jitterMs = Math.max(jitterMs, getDouble(members, "jitter") * 1000);
+                    break;
+                case "outbound-rtp":
+                    bytesSent += getDouble(members, "bytesSent");
+                    break;
+                case "candidate-pair":
+                    if (Boolean.TRUE.equals(members.get("nominated")) && "succeeded".equals(members.get("state"))
+                            && members.get("currentRoundTripTime") instanceof Number) {
+                        rttMs = getDouble(members, "currentRoundTripTime") * 1000;
+                    }
+                    break;
+            }
+        }
+
+        void copyFrom(Totals other) {
+            timestampUs = other.timestampUs;
+            bytesReceived = other.bytesReceived;
+            bytesSent = other.bytesSent;
+            packetsReceived = other.packetsReceived;
+            packetsLost = other.packetsLost;
+            framesDecoded = other.framesDecoded;
+            totalDecodeTimeMs = other.totalDecodeTimeMs;
+            freezeCount = other.freezeCount;
+            jitterMs = other.jitterMs;
+            rttMs = other.rttMs;
+        }
+
+        private static double getDouble(Map<String, Object> members, String name) {
+            Object value = members.get(name);
+            return value instanceof Number ? ((Number) value).doubleValue() : 0;
+        }
+    }
+
+    /**
+     * A fixed-size window of the last values added.
+     */
+    private static final class DoubleRingBuffer {
+        private final double[] values;
+        private final double[] sorted;
+        private int next;
+        private int size;
+
+        DoubleRingBuffer(int capacity) {
+            values = new double[capacity];
+            sorted = new double[capacity];
+        }
+
+        void add(double value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+        }
+
+        double sum() {
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }
+
+        double mean() {
+            return size == 0 ? 0 : sum() / size;
+        }
+
+        /**
+         * Gets the given percentile (nearest-rank) of the values.
+         */
+        double percentile(int percentile) {
+            if (size == 0) {
+                return 0;
+            }
+
+            System.arraycopy(values, 0, sorted, 0, size);
+            Arrays.sort(sorted, 0, size);
+            int rank = (int) Math.ceil(percentile / 100.0 * size);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
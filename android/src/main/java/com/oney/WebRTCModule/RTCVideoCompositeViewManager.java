@@ -0,0 +1,36 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.uimanager.SimpleViewManager;
+import com.facebook.react.uimanager.ThemedReactContext;
+import com.facebook.react.uimanager.annotations.ReactProp;
+
+public class RTCVideoCompositeViewManager extends SimpleViewManager<WebRTCCompositeView> {
+    private static final String REACT_CLASS = "RTCVideoCompositeView";
+
+    @Override
+    public String getName() {
+        return REACT_CLASS;
+    }
+
+    @Override
+    public WebRTCCompositeView createViewInstance(ThemedReactContext context) {
+        return new WebRTCCompositeView(context);
+    }
+
+    /**
+     * Sets the tiles rendered by a specific {@link WebRTCCompositeView}. For
+     * more details, refer to the documentation of the {@code tiles} property
+     * of the JavaScript counterpart of {@code WebRTCCompositeView} i.e.
+     * {@code RTCCompositeView}.
+     *
+     * @param view The {@code WebRTCCompositeView} on which the tiles are to be set.
+     * @param tiles The layout of the tiles.
+     */
+    @ReactProp(name = "tiles")
+    public void setTiles(WebRTCCompositeView view, @Nullable ReadableArray tiles) {
+        view.setTiles(tiles);
+    }
+}
@@ -76,6 +76,34 @@ public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
         view.setZOrder(zOrder);
     }
 
+    /**
+     * Sets whether a specific {@link WebRTCView} caps the frame rate at which it
+     * renders based on its on-screen size and visibility. For more details,
+     * refer to the documentation of the {@code renderBudget} property of the
+     * JavaScript counterpart of {@code WebRTCView} i.e. {@code RTCView}.
+     *
+     * @param view The {@code WebRTCView} on which the render budget is to be set.
+     * @param renderBudget Whether the render budget is enabled.
+     */
+    @ReactProp(name = "renderBudget")
+    public void setRenderBudget(WebRTCView view, boolean renderBudget) {
+        view.setRenderBudget(renderBudget);
+    }
+
+    /**
+     * Sets the type of view which renders the video of a specific
+     * {@link WebRTCView}. For more details, refer to the documentation of the
+     * {@code renderer} property of the JavaScript counterpart of
+     * {@code WebRTCView} i.e. {@code RTCView}.
+     *
+     * @param view The {@code WebRTCView} on which the renderer type is to be set.
+     * @param renderer {@code "surface"} or {@code "texture"}.
+     */
+    @ReactProp(name = "renderer")
+    public void setRenderer(WebRTCView view, String renderer) {
+        view.setRendererType(renderer);
+    }
+
     /**
      * Sets the callback for when video dimensions change.
      *
@@ -0,0 +1,181 @@
+package com.oney.WebRTCModule;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A bounded pool of initialized {@link WebRTCViewRenderer}s, shared by all
+ * {@link WebRTCView}s. A renderer which is no longer used (e.g. its view was
+ * scrolled out of a list and detached) keeps its EGL context, render thread
+ * and drawer in the pool, and is reused by the next view which starts
+ * rendering, which then skips their setup. When the pool is full, the least
+ * recently used renderer is released.
+ *
+ * Only accessed on the UI thread, except for the metrics.
+ */
+class RendererPool {
+    private static final int DEFAULT_MAX_SIZE = 4;
+
+    private static final RendererPool instance = new RendererPool();
+
+    /**
+     * The idle renderers, the least recently used first.
+     */
+    private final LinkedList<Entry> entries = new LinkedList<>();
+
+    /**
+     * The number of initialized renderers, in use or idle, used for logging.
+     * When a renderer is initialized, it creates a new EGL context which can
+     * throw an exception, probably due to memory limitations.
+     */
+    private int rendererCount;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    static RendererPool getInstance() {
+        return instance;
+    }
+
+    private static int getMaxSize() {
+        int size = WebRTCModuleOptions.getInstance().rendererPoolSize;
+        return size == 0 ? DEFAULT_MAX_SIZE : Math.max(0, size);
+    }
+
+    /**
+     * Takes an initialized renderer of the given type out of the pool.
+     *
+     * @return The most recently used matching renderer, or {@code null} if
+     * there is none, in which case the caller is to create and initialize one.
+     */
+    @Nullable
+    synchronized WebRTCViewRenderer acquire(Context context, String type) {
+        Iterator<Entry> it = entries.descendingIterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            // Views are bound to the context they were created with.
+            if (entry.type.equals(type) && entry.renderer.getView().getContext() == context) {
+                it.remove();
+                hits++;
+                return entry.renderer;
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    synchronized void onRendererInitialized() {
+        rendererCount++;
+    }
+
+    synchronized int getRendererCount() {
+        return rendererCount;
+    }
+
+    /**
+     * Gives an initialized renderer, no longer rendering any track, back to
+     * the pool. If the pool is full, the least recently used renderer is
+     * released. A renderer of a destroyed Activity is released right away:
+     * it would never be reused, and would keep the Activity alive.
+     */
+    void release(WebRTCViewRenderer renderer, String type) {
+        if (isDestroyed(renderer.getView().getContext())) {
+            synchronized (this) {
+                rendererCount--;
+            }
+            renderer.release();
+            return;
+        }
+
+        List<WebRTCViewRenderer> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            entries.addLast(new Entry(renderer, type));
+
+            int maxSize = getMaxSize();
+            while (entries.size() > maxSize) {
+                evicted.add(entries.removeFirst().renderer);
+                evictions++;
+                rendererCount--;
+            }
+        }
+
+        for (WebRTCViewRenderer r : evicted) {
+            r.release();
+        }
+    }
+
+    /**
+     * Tells whether the Activity of the given context is gone, or about to be
+     * (views are detached after {@code onHostDestroy}, which clears the pool).
+     */
+    private static boolean isDestroyed(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                Activity activity = (Activity) context;
+                return activity.isFinishing() || activity.isDestroyed() || activity.isChangingConfigurations();
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return false;
+    }
+
+    /**
+     * Releases all the idle renderers.
+     */
+    void clear() {
+        List<Entry> cleared;
+        synchronized (this) {
+            cleared = new ArrayList<>(entries);
+            entries.clear();
+            rendererCount -= cleared.size();
+        }
+
+        for (Entry entry : cleared) {
+            entry.renderer.release();
+        }
+    }
+
+    synchronized WritableMap getMetrics(boolean reset) {
+        WritableMap metrics = Arguments.createMap();
+        long requests = hits + misses;
+        metrics.putDouble("hits", hits);
+        metrics.putDouble("misses", misses);
+        metrics.putDouble("hitRate", requests == 0 ? 0 : hits / (double) requests);
+        metrics.putDouble("evictions", evictions);
+        metrics.putInt("size", entries.size());
+        metrics.putInt("maxSize", getMaxSize());
+        metrics.putInt("renderers", rendererCount);
+
+        if (reset) {
+            hits = 0;
+            misses = 0;
+            evictions = 0;
+        }
+
+        return metrics;
+    }
+
+    private static final class Entry {
+        final WebRTCViewRenderer renderer;
+        final String type;
+
+        Entry(WebRTCViewRenderer renderer, String type) {
+            this.renderer = renderer;
+            this.type = type;
+        }
+    }
+}
@@ -41,7 +41,7 @@ public class ScreenCaptureController extends AbstractVideoCaptureController {
 
                 // Pivot to the executor thread because videoCapturer.changeCaptureFormat runs in the main
                 // thread and may deadlock.
-                ThreadUtils.runOnExecutor(() -> {
+                ThreadUtils.runOnExecutor("onOrientationChanged", () -> {
                     try {
                         videoCapturer.changeCaptureFormat(width, height, DEFAULT_FPS);
                     } catch (Exception ex) {
@@ -0,0 +1,72 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.webrtc.RTCStats;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Restricts which stats (by type) and which of their members (by name) are
+ * serialized. The timestamp, type and id of the stats are always kept.
+ */
+class StatsFilter {
+    @Nullable
+    private final Set<String> types;
+    @Nullable
+    private final Set<String> members;
+
+    private StatsFilter(@Nullable Set<String> types, @Nullable Set<String> members) {
+        this.types = types;
+        this.members = members;
+    }
+
+    /**
+     * Creates a filter from its JS representation:
+     * <tt>{ types?: string[], members?: string[] }</tt>. A missing list means
+     * no filtering.
+     *
+     * @return The filter, or {@code null} if nothing is filtered out.
+     */
+    @Nullable
+    static StatsFilter fromMap(@Nullable ReadableMap map) {
+        if (map == null) {
+            return null;
+        }
+
+        Set<String> types = toSet(map, "types");
+        Set<String> members = toSet(map, "members");
+        if (types == null && members == null) {
+            return null;
+        }
+
+        return new StatsFilter(types, members);
+    }
+
+    @Nullable
+    private static Set<String> toSet(ReadableMap map, String key) {
+        if (!map.hasKey(key) || map.isNull(key)) {
+            return null;
+        }
+
+        ReadableArray array = map.getArray(key);
+        Set<String> set = new HashSet<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            set.add(array.getString(i));
+        }
+
+        return set;
+    }
+
+    boolean includesStats(RTCStats stats) {
+        return types == null || types.contains(stats.getType());
+    }
+
+    boolean includesMember(String name) {
+        return members == null || members.contains(name);
+    }
+}
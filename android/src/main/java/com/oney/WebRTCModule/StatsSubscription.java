@@ -0,0 +1,107 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically collects the stats of a PeerConnection and emits only what
+ * changed since the previous report, as a {@link #DELTA_EVENT} event. The
+ * first event holds the full report, no event is emitted when nothing changed.
+ */
+class StatsSubscription {
+    static final String DELTA_EVENT = "peerConnectionStatsDelta";
+
+    /**
+     * How long a collection may take before it is considered lost, should
+     * getStats never call back (e.g. the PeerConnection was closed meanwhile).
+     */
+    private static final long PENDING_TIMEOUT_MS = 5000;
+
+    private final WebRTCModule webRTCModule;
+    private final int peerConnectionId;
+    private final PeerConnection peerConnection;
+    @Nullable
+    private final StatsFilter filter;
+    private final ScheduledFuture<?> future;
+
+    /**
+     * Only accessed on the executor lane of the PeerConnection.
+     */
+    @Nullable
+    private Map<String, RTCStats> previousStats;
+    private boolean pending;
+    private long pendingSinceMs;
+    private int collectionId;
+    private volatile boolean cancelled;
+
+    StatsSubscription(WebRTCModule webRTCModule, int peerConnectionId, PeerConnection peerConnection,
+            long intervalMs, @Nullable StatsFilter filter) {
+        this.webRTCModule = webRTCModule;
+        this.peerConnectionId = peerConnectionId;
+        this.peerConnection = peerConnection;
+        this.filter = filter;
+        this.future = ThreadUtils.getScheduler().scheduleAtFixedRate(() -> {
+            ThreadUtils.runOnExecutor(peerConnectionId, "statsSubscription", this::collect);
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the collections. Must be called on the executor lane of the
+     * PeerConnection.
+     */
+    void cancel() {
+        cancelled = true;
+        pending = false;
+        future.cancel(false);
+    }
+
+    private void collect() {
+        // Skip a collection if the previous one has not completed yet, unless it is lost.
+        long nowMs = SystemClock.elapsedRealtime();
+        if (cancelled || (pending && nowMs - pendingSinceMs < PENDING_TIMEOUT_MS)) {
+            return;
+        }
+        pending = true;
+        pendingSinceMs = nowMs;
+
+        int id = ++collectionId;
+        peerConnection.getStats(report -> {
+            ThreadUtils.runOnExecutor(peerConnectionId, "statsSubscriptionDelta", () -> onReport(id, report));
+        });
+    }
+
+    private void onReport(int id, RTCStatsReport report) {
+        // A report which comes after its collection timed out is stale.
+        if (cancelled || id != collectionId) {
+            return;
+        }
+        pending = false;
+
+        Map<String, RTCStats> stats = report.getStatsMap();
+        String delta = StringUtils.statsDeltaToJSON(stats, previousStats, filter);
+        previousStats = stats;
+
+        // Nothing to tell when nothing changed, e.g. with a filter on idle streams.
+        if (delta == null) {
+            return;
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putString("delta", delta);
+
+        webRTCModule.sendEvent(DELTA_EVENT, params);
+    }
+}
@@ -0,0 +1,60 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.MediaStream;
+import org.webrtc.VideoTrack;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of all the {@link MediaStream}s, local and remote, by react tag,
+ * along with their first {@link VideoTrack}. It is maintained on the executor
+ * as streams are created, changed and released, and can be queried from any
+ * thread (e.g. by views on the UI thread) without locking or scanning the
+ * streams of every PeerConnection.
+ */
+class StreamIndex {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Adds or updates a stream. Must be called on the executor, whenever the
+     * tracks of the stream change, since {@link MediaStream#videoTracks} is
+     * not safe to read from other threads.
+     */
+    void put(String reactTag, MediaStream stream) {
+        VideoTrack videoTrack = stream.videoTracks.isEmpty() ? null : stream.videoTracks.get(0);
+        entries.put(reactTag, new Entry(stream, videoTrack));
+    }
+
+    void remove(String reactTag) {
+        entries.remove(reactTag);
+    }
+
+    @Nullable
+    MediaStream getStream(String reactTag) {
+        Entry entry = entries.get(reactTag);
+        return entry == null ? null : entry.stream;
+    }
+
+    /**
+     * Gets the first video track of a stream, as of the last time it was put.
+     */
+    @Nullable
+    VideoTrack getVideoTrack(String reactTag) {
+        Entry entry = entries.get(reactTag);
+        return entry == null ? null : entry.videoTrack;
+    }
+
+    private static final class Entry {
+        final MediaStream stream;
+        @Nullable
+        final VideoTrack videoTrack;
+
+        Entry(MediaStream stream, @Nullable VideoTrack videoTrack) {
+            this.stream = stream;
+            this.videoTrack = videoTrack;
+        }
+    }
+}
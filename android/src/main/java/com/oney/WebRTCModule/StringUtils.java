@@ -2,15 +2,37 @@ package com.oney.WebRTCModule;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import org.webrtc.PeerConnection;
 import org.webrtc.RTCStats;
 import org.webrtc.RTCStatsReport;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public class StringUtils {
     private static final String TAG = StringUtils.class.getSimpleName();
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Builders are reused across calls (stats are serialized on a handful of
+     * threads) so they only grow until they fit the usual report size. A
+     * builder which grew past this capacity is not kept around.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+    };
+
     /**
      * Constructs a JSON <tt>String</tt> representation of a specific array of
      * <tt>RTCStatsReport</tt>s (produced by {@link PeerConnection#getStats}).
@@ -21,81 +43,340 @@ public class StringUtils {
      * in JSON format
      */
     public static String statsToJSON(RTCStatsReport report) {
-        StringBuilder builder = new StringBuilder("[");
+        return statsToJSON(report, false, null);
+    }
+
+    /**
+     * Constructs a JSON <tt>String</tt> representation of a specific array of
+     * <tt>RTCStatsReport</tt>s, either as an array of <tt>[id, stats]</tt>
+     * entries or, if <tt>compact</tt>, in the following form, where member
+     * names are only written once and referred to by index:
+     * <pre>
+     * {"stats":[["id","type",timestamp,[0,1234,...]],...],"keys":["bytesSent",...]}
+     * </pre>
+     * The stats and members which the given filter excludes are skipped
+     * before they are serialized.
+     */
+    public static String statsToJSON(RTCStatsReport report, boolean compact, @Nullable StatsFilter filter) {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+
+        if (compact) {
+            appendCompactReport(builder, report.getStatsMap(), filter);
+        } else {
+            appendReport(builder, report.getStatsMap(), filter);
+        }
+
+        return release(builder);
+    }
+
+    /**
+     * Constructs a JSON <tt>String</tt> representation of the changes between
+     * two <tt>RTCStatsReport</tt>s, in the following form:
+     * <pre>
+     * {"changed":[["id",{"timestamp":...,"type":"...","id":"...",...}],...],"removed":["id",...]}
+     * </pre>
+     * Stats which are new are written in full, stats which changed only
+     * hold the members whose value changed.
+     *
+     * @param previous the stats of the previous report, or {@code null} if
+     *                 there is none
+     * @param filter the stats and members to consider, or {@code null} for all
+     * @return the delta, or {@code null} if nothing changed nor was removed
+     */
+    @Nullable
+    static String statsDeltaToJSON(
+            Map<String, RTCStats> current, @Nullable Map<String, RTCStats> previous, @Nullable StatsFilter filter) {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+
+        builder.append("{\"changed\":[");
+
+        boolean firstStats = true;
+        for (Map.Entry<String, RTCStats> statsEntry : current.entrySet()) {
+            RTCStats stats = statsEntry.getValue();
+            if (filter != null && !filter.includesStats(stats)) {
+                continue;
+            }
+
+            RTCStats previousStats = previous != null ? previous.get(statsEntry.getKey()) : null;
+            Map<String, Object> previousMembers = previousStats != null ? previousStats.getMembers() : null;
+
+            int mark = builder.length();
+            if (!firstStats) {
+                builder.append(',');
+            }
 
-        boolean firstKey = true;
+            builder.append('[');
+            appendString(builder, statsEntry.getKey());
+            builder.append(",{\"timestamp\":").append(stats.getTimestampUs() / 1000.0).append(",\"type\":");
+            appendString(builder, stats.getType());
+            builder.append(",\"id\":");
+            appendString(builder, stats.getId());
 
-        Map<String, RTCStats> statsMap = report.getStatsMap();
+            boolean changed = previousMembers == null;
+            for (Map.Entry<String, Object> entry : stats.getMembers().entrySet()) {
+                String name = entry.getKey();
+                Object value = entry.getValue();
+                if ((filter != null && !filter.includesMember(name))
+                        || (previousMembers != null && valueEquals(value, previousMembers.get(name)))) {
+                    continue;
+                }
+
+                changed = true;
+                builder.append(',');
+                appendString(builder, name);
+                builder.append(':');
+                appendValue(builder, value);
+            }
 
-        for (String key : report.getStatsMap().keySet()) {
-            if (firstKey) {
-                firstKey = false;
+            if (changed) {
+                builder.append("}]");
+                firstStats = false;
             } else {
-                builder.append(",");
+                builder.setLength(mark);
+            }
+        }
+
+        builder.append("],\"removed\":[");
+
+        boolean firstRemoved = true;
+        if (previous != null) {
+            for (Map.Entry<String, RTCStats> statsEntry : previous.entrySet()) {
+                if (current.containsKey(statsEntry.getKey())
+                        || (filter != null && !filter.includesStats(statsEntry.getValue()))) {
+                    continue;
+                }
+
+                if (firstRemoved) {
+                    firstRemoved = false;
+                } else {
+                    builder.append(',');
+                }
+                appendString(builder, statsEntry.getKey());
+            }
+        }
+
+        if (firstStats && firstRemoved) {
+            return null;
+        }
+
+        builder.append("]}");
+
+        return release(builder);
+    }
+
+    private static boolean valueEquals(Object value, Object other) {
+        if (value instanceof Object[] && other instanceof Object[]) {
+            return Arrays.deepEquals((Object[]) value, (Object[]) other);
+        }
+
+        return Objects.equals(value, other);
+    }
+
+    /**
+     * Gets the contents of a builder obtained from {@link #builders}, which
+     * is dropped if it grew too large to be kept around.
+     */
+    private static String release(StringBuilder builder) {
+        String json = builder.toString();
+
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            builders.remove();
+        }
+
+        return json;
+    }
+
+    private static void appendReport(
+            StringBuilder builder, Map<String, RTCStats> statsMap, @Nullable StatsFilter filter) {
+        builder.append('[');
+
+        boolean firstStats = true;
+        for (Map.Entry<String, RTCStats> statsEntry : statsMap.entrySet()) {
+            RTCStats stats = statsEntry.getValue();
+            if (filter != null && !filter.includesStats(stats)) {
+                continue;
             }
 
-            builder.append("[\"").append(key).append("\",{");
+            if (firstStats) {
+                firstStats = false;
+            } else {
+                builder.append(',');
+            }
 
-            RTCStats stats = statsMap.get(key);
-            builder.append("\"timestamp\":")
-                    .append(stats.getTimestampUs() / 1000.0)
-                    .append(",\"type\":\"")
-                    .append(stats.getType())
-                    .append("\",\"id\":\"")
-                    .append(stats.getId())
-                    .append("\"");
+            builder.append('[');
+            appendString(builder, statsEntry.getKey());
+            builder.append(",{\"timestamp\":").append(stats.getTimestampUs() / 1000.0).append(",\"type\":");
+            appendString(builder, stats.getType());
+            builder.append(",\"id\":");
+            appendString(builder, stats.getId());
 
             for (Map.Entry<String, Object> entry : stats.getMembers().entrySet()) {
-                builder.append(",").append("\"").append(entry.getKey()).append("\":");
+                if (filter != null && !filter.includesMember(entry.getKey())) {
+                    continue;
+                }
+
+                builder.append(',');
+                appendString(builder, entry.getKey());
+                builder.append(':');
                 appendValue(builder, entry.getValue());
             }
 
             builder.append("}]");
         }
 
-        builder.append("]");
+        builder.append(']');
+    }
+
+    private static void appendCompactReport(
+            StringBuilder builder, Map<String, RTCStats> statsMap, @Nullable StatsFilter filter) {
+        // The member names are only known once all stats were written, so they
+        // are written first to a separate builder.
+        Map<String, Integer> keyIndexes = new HashMap<>();
+        StringBuilder keys = new StringBuilder(1024);
+
+        builder.append("{\"stats\":[");
+
+        boolean firstStats = true;
+        for (RTCStats stats : statsMap.values()) {
+            if (filter != null && !filter.includesStats(stats)) {
+                continue;
+            }
+
+            if (firstStats) {
+                firstStats = false;
+            } else {
+                builder.append(',');
+            }
+
+            builder.append('[');
+            appendString(builder, stats.getId());
+            builder.append(',');
+            appendString(builder, stats.getType());
+            builder.append(',').append(stats.getTimestampUs() / 1000.0).append(",[");
+
+            boolean firstMember = true;
+            for (Map.Entry<String, Object> entry : stats.getMembers().entrySet()) {
+                if (filter != null && !filter.includesMember(entry.getKey())) {
+                    continue;
+                }
+
+                if (firstMember) {
+                    firstMember = false;
+                } else {
+                    builder.append(',');
+                }
+
+                Integer index = keyIndexes.get(entry.getKey());
+                if (index == null) {
+                    index = keyIndexes.size();
+                    keyIndexes.put(entry.getKey(), index);
+                    if (index > 0) {
+                        keys.append(',');
+                    }
+                    appendString(keys, entry.getKey());
+                }
+
+                builder.append(index.intValue()).append(',');
+                appendValue(builder, entry.getValue());
+            }
 
-        return builder.toString();
+            builder.append("]]");
+        }
+
+        builder.append("],\"keys\":[").append(keys).append("]}");
     }
 
     private static void appendValue(StringBuilder builder, Object value) {
-        if (value instanceof Object[]) {
+        // Most members are numbers, check for them first.
+        if (value instanceof Double) {
+            double doubleValue = (Double) value;
+            if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                // Not representable in JSON.
+                builder.append("null");
+            } else {
+                builder.append(doubleValue);
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        } else if (value instanceof String) {
+            appendString(builder, (String) value);
+        } else if (value instanceof Object[]) {
             Object[] arrayValue = (Object[]) value;
-            builder.append("[");
+            builder.append('[');
 
             for (int i = 0; i < arrayValue.length; ++i) {
                 if (i != 0) {
-                    builder.append(",");
+                    builder.append(',');
                 }
 
                 appendValue(builder, arrayValue[i]);
             }
 
-            builder.append("]");
+            builder.append(']');
         } else if (value instanceof Map) {
-            try {
-                Map<String, Object> mapValue = (Map) value;
-
-                boolean firstKey = true;
-                builder.append("{");
+            builder.append('{');
 
-                for (Map.Entry<String, Object> entry : mapValue.entrySet()) {
-                    if (firstKey) {
-                        firstKey = false;
-                    } else {
-                        builder.append(",");
-                    }
-                    builder.append("\"").append(entry.getKey()).append("\":");
-                    appendValue(builder, entry.getValue());
+            boolean firstKey = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (firstKey) {
+                    firstKey = false;
+                } else {
+                    builder.append(',');
                 }
-                builder.append("}");
-            } catch (ClassCastException e) {
-                Log.e(TAG, "Error parsing stats value " + value);
+                appendString(builder, String.valueOf(entry.getKey()));
+                builder.append(':');
+                appendValue(builder, entry.getValue());
             }
-        } else if (value instanceof String) {
-            builder.append("\"").append(value).append("\"");
+
+            builder.append('}');
+        } else if (value == null) {
+            builder.append("null");
         } else {
-            builder.append(value);
+            Log.e(TAG, "Unsupported stats value " + value);
+            builder.append("null");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Appends the given string as a quoted JSON string, escaping it as needed.
+     */
+    private static void appendString(StringBuilder builder, String str) {
+        builder.append('"');
+
+        int start = 0;
+        for (int i = 0, length = str.length(); i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            builder.append(str, start, i);
+            start = i + 1;
+
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    builder.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    break;
+            }
+        }
+
+        builder.append(str, start, str.length()).append('"');
+    }
+}
@@ -0,0 +1,80 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.RendererCommon;
+import org.webrtc.SurfaceViewRenderer;
+import org.webrtc.VideoFrame;
+
+/**
+ * The {@link SurfaceViewRenderer} based backend of {@link WebRTCView}, the
+ * default one.
+ *
+ * The rendering events are reported by this class rather than by
+ * {@code SurfaceViewRenderer}, which only takes a listener upon
+ * initialization, so that they can be redirected when the renderer is reused.
+ */
+class SurfaceViewRendererBackend extends SurfaceViewRenderer implements WebRTCViewRenderer {
+    private final Object eventsLock = new Object();
+    @Nullable
+    private RendererCommon.RendererEvents rendererEvents;
+    private boolean isFirstFrameRendered;
+    private int frameWidth;
+    private int frameHeight;
+    private int frameRotation;
+
+    SurfaceViewRendererBackend(Context context) {
+        super(context);
+    }
+
+    @Override
+    public void init(EglBase.Context sharedContext, RendererCommon.RendererEvents rendererEvents) {
+        super.init(sharedContext, null);
+        setRendererEvents(rendererEvents);
+    }
+
+    @Override
+    public void setRendererEvents(@Nullable RendererCommon.RendererEvents rendererEvents) {
+        synchronized (eventsLock) {
+            this.rendererEvents = rendererEvents;
+            isFirstFrameRendered = false;
+            frameWidth = 0;
+            frameHeight = 0;
+            frameRotation = 0;
+        }
+    }
+
+    @Override
+    public void onFrame(VideoFrame frame) {
+        super.onFrame(frame);
+
+        synchronized (eventsLock) {
+            if (rendererEvents == null) {
+                return;
+            }
+
+            if (!isFirstFrameRendered) {
+                isFirstFrameRendered = true;
+                rendererEvents.onFirstFrameRendered();
+            }
+
+            int width = frame.getBuffer().getWidth();
+            int height = frame.getBuffer().getHeight();
+            if (frameWidth != width || frameHeight != height || frameRotation != frame.getRotation()) {
+                frameWidth = width;
+                frameHeight = height;
+                frameRotation = frame.getRotation();
+                rendererEvents.onFrameResolutionChanged(width, height, frameRotation);
+            }
+        }
+    }
+
+    @Override
+    public View getView() {
+        return this;
+    }
+}
@@ -0,0 +1,186 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.SurfaceTexture;
+import android.view.TextureView;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.EglRenderer;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoFrame;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The {@link TextureView} based backend of {@link WebRTCView}. Unlike a
+ * {@link android.view.SurfaceView}, a {@code TextureView} is composited like
+ * any other view: it can be moved, clipped and overlapped (for example in a
+ * scrolling list) without its surface being recreated or z-order issues. It
+ * renders with an {@link EglRenderer}, like {@link org.webrtc.SurfaceViewRenderer}.
+ */
+class TextureViewRenderer extends TextureView implements TextureView.SurfaceTextureListener, WebRTCViewRenderer {
+    private final RendererCommon.VideoLayoutMeasure videoLayoutMeasure = new RendererCommon.VideoLayoutMeasure();
+    private final EglRenderer eglRenderer;
+
+    /**
+     * Synchronizes the state below, which is accessed from the render thread
+     * (in {@link #onFrame(VideoFrame)}) and from the main thread.
+     */
+    private final Object layoutLock = new Object();
+    private RendererCommon.RendererEvents rendererEvents;
+    private boolean isFirstFrameRendered;
+    private int rotatedFrameWidth;
+    private int rotatedFrameHeight;
+    private int frameRotation;
+
+    TextureViewRenderer(Context context) {
+        super(context);
+        eglRenderer = new EglRenderer(getResourceName());
+        setSurfaceTextureListener(this);
+    }
+
+    private String getResourceName() {
+        try {
+            return getResources().getResourceEntryName(getId());
+        } catch (Exception e) {
+            return "TextureViewRenderer";
+        }
+    }
+
+    @Override
+    public void init(EglBase.Context sharedContext, RendererCommon.RendererEvents rendererEvents) {
+        setRendererEvents(rendererEvents);
+
+        eglRenderer.init(sharedContext, EglBase.CONFIG_PLAIN, new GlRectDrawer());
+
+        // The surface may already be available if the renderer was released
+        // and is being initialized again.
+        SurfaceTexture surfaceTexture = getSurfaceTexture();
+        if (surfaceTexture != null) {
+            eglRenderer.createEglSurface(surfaceTexture);
+        }
+    }
+
+    @Override
+    public void setRendererEvents(@Nullable RendererCommon.RendererEvents rendererEvents) {
+        synchronized (layoutLock) {
+            this.rendererEvents = rendererEvents;
+            isFirstFrameRendered = false;
+            rotatedFrameWidth = 0;
+            rotatedFrameHeight = 0;
+            frameRotation = 0;
+        }
+    }
+
+    @Override
+    public void release() {
+        eglRenderer.release();
+    }
+
+    @Override
+    public void setMirror(boolean mirror) {
+        eglRenderer.setMirror(mirror);
+    }
+
+    @Override
+    public void setScalingType(RendererCommon.ScalingType scalingType) {
+        videoLayoutMeasure.setScalingType(scalingType);
+        requestLayout();
+    }
+
+    @Override
+    public void clearImage() {
+        eglRenderer.clearImage();
+    }
+
+    @Override
+    public void setFpsReduction(float fps) {
+        eglRenderer.setFpsReduction(fps);
+    }
+
+    @Override
+    public void disableFpsReduction() {
+        eglRenderer.disableFpsReduction();
+    }
+
+    @Override
+    public void pauseVideo() {
+        eglRenderer.pauseVideo();
+    }
+
+    @Override
+    public View getView() {
+        return this;
+    }
+
+    @Override
+    public void onFrame(VideoFrame frame) {
+        updateFrameDimensionsAndReportEvents(frame);
+        eglRenderer.onFrame(frame);
+    }
+
+    private void updateFrameDimensionsAndReportEvents(VideoFrame frame) {
+        synchronized (layoutLock) {
+            if (!isFirstFrameRendered) {
+                isFirstFrameRendered = true;
+                if (rendererEvents != null) {
+                    rendererEvents.onFirstFrameRendered();
+                }
+            }
+
+            if (rotatedFrameWidth != frame.getRotatedWidth() || rotatedFrameHeight != frame.getRotatedHeight()
+                    || frameRotation != frame.getRotation()) {
+                rotatedFrameWidth = frame.getRotatedWidth();
+                rotatedFrameHeight = frame.getRotatedHeight();
+                frameRotation = frame.getRotation();
+                if (rendererEvents != null) {
+                    rendererEvents.onFrameResolutionChanged(
+                            frame.getBuffer().getWidth(), frame.getBuffer().getHeight(), frame.getRotation());
+                }
+                post(this::requestLayout);
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthSpec, int heightSpec) {
+        Point size;
+        synchronized (layoutLock) {
+            size = videoLayoutMeasure.measure(widthSpec, heightSpec, rotatedFrameWidth, rotatedFrameHeight);
+        }
+        setMeasuredDimension(size.x, size.y);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        if (right > left && bottom > top) {
+            eglRenderer.setLayoutAspectRatio((right - left) / (float) (bottom - top));
+        }
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture, int width, int height) {
+        eglRenderer.createEglSurface(surfaceTexture);
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture, int width, int height) {}
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
+        // The surface must not be used once this returns.
+        CountDownLatch completionLatch = new CountDownLatch(1);
+        eglRenderer.releaseEglSurface(completionLatch::countDown);
+        org.webrtc.ThreadUtils.awaitUninterruptibly(completionLatch);
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {}
+}
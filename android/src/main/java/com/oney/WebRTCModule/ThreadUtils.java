@@ -4,38 +4,133 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 final class ThreadUtils {
     /**
-     * Thread which will be used to call all WebRTC PeerConnection APIs. They
-     * they don't run on the calling thread anyway, we are deferring the calls
-     * to this thread to avoid (potentially) blocking the calling thread.
+     * Thread which will be used to call all factory-level WebRTC APIs (getUserMedia,
+     * certificates, local streams and tracks). They don't run on the calling
+     * thread anyway, we are deferring the calls to this thread to avoid
+     * (potentially) blocking the calling thread.
+     *
+     * It owns the tracks: they are disposed on it, local ones when released and
+     * remote ones along with their PeerConnection, and the sinks of the video
+     * views are added and removed on it, so a track is never used while being
+     * disposed. A PeerConnection lane which uses a track (e.g. adding a local
+     * track to its PeerConnection) does it from a task run on this executor,
+     * and waits for it to keep its order. This executor never waits for a lane.
      */
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
 
+    /**
+     * Number of lanes used for PeerConnection APIs. Each PeerConnection is
+     * pinned to one lane (by id) so calls on the same PeerConnection keep
+     * their order, while unrelated PeerConnections can run in parallel.
+     */
+    private static final int LANE_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService[] laneExecutors = new ExecutorService[LANE_COUNT];
+
+    /**
+     * Thread for blocking file I/O (e.g. data channel file transfers), so that
+     * it never holds the executors back.
+     */
+    private static final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+    private static final int IO_LANE = LANE_COUNT + 1;
+
+    /**
+     * Thread shared by all periodic tasks (stats sampling, etc.). It is only
+     * meant to keep time: scheduled tasks should hand the actual work off to
+     * one of the executors.
+     */
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Queue depth and latency metrics, indexed by lane. Index 0 is the global
+     * executor, the PeerConnection lanes follow, then the I/O thread.
+     */
+    private static final ExecutorMetrics metrics;
+
+    static {
+        String[] laneNames = new String[LANE_COUNT + 2];
+        laneNames[0] = "global";
+        for (int i = 0; i < LANE_COUNT; i++) {
+            laneExecutors[i] = Executors.newSingleThreadExecutor();
+            laneNames[i + 1] = "peerConnection" + i;
+        }
+        laneNames[IO_LANE] = "io";
+        metrics = new ExecutorMetrics(laneNames);
+    }
+
+    static ExecutorMetrics getMetrics() {
+        return metrics;
+    }
+
+    static ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Gets the metrics lane index for the given PeerConnection id. A negative
+     * id (which is how local tracks are identified) maps to the global executor.
+     */
+    private static int getLane(int peerConnectionId) {
+        return peerConnectionId < 0 ? 0 : (peerConnectionId % LANE_COUNT) + 1;
+    }
+
+    private static ExecutorService getExecutor(int lane) {
+        return lane == 0 ? executor : laneExecutors[lane - 1];
+    }
+
     /**
      * Runs the given {@link Runnable} on the executor.
+     * @param category name under which the task is recorded in the metrics.
      * @param runnable
      */
-    public static void runOnExecutor(Runnable runnable) {
-        executor.execute(runnable);
+    public static void runOnExecutor(String category, Runnable runnable) {
+        runOnExecutor(-1, category, runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor lane of the given PeerConnection.
+     * @param peerConnectionId
+     * @param category name under which the task is recorded in the metrics.
+     * @param runnable
+     */
+    public static void runOnExecutor(int peerConnectionId, String category, Runnable runnable) {
+        int lane = getLane(peerConnectionId);
+        getExecutor(lane).execute(metrics.wrap(lane, category, runnable));
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the I/O thread. Tasks run in order.
+     * @param category name under which the task is recorded in the metrics.
+     * @param runnable
+     */
+    public static void runOnIoExecutor(String category, Runnable runnable) {
+        ioExecutor.execute(metrics.wrap(IO_LANE, category, runnable));
     }
 
     /**
      * Submits the given {@link Callable} to be run on the executor.
+     * @param category name under which the task is recorded in the metrics.
      * @param callable
      * @return Future.
      */
-    public static <T> Future<T> submitToExecutor(Callable<T> callable) {
-        return executor.submit(callable);
+    public static <T> Future<T> submitToExecutor(String category, Callable<T> callable) {
+        return submitToExecutor(-1, category, callable);
     }
 
     /**
-     * Submits the given {@link Runnable} to be run on the executor.
-     * @param runnable
+     * Submits the given {@link Callable} to be run on the executor lane of the given PeerConnection.
+     * @param peerConnectionId
+     * @param category name under which the task is recorded in the metrics.
+     * @param callable
      * @return Future.
      */
-    public static Future<?> submitToExecutor(Runnable runnable) {
-        return executor.submit(runnable);
+    public static <T> Future<T> submitToExecutor(int peerConnectionId, String category, Callable<T> callable) {
+        int lane = getLane(peerConnectionId);
+        return getExecutor(lane).submit(metrics.wrap(lane, category, callable));
     }
 }
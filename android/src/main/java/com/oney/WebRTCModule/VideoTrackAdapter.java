@@ -1,7 +1,10 @@
 package com.oney.WebRTCModule;
 
+import android.os.SystemClock;
 import android.util.*;
 
+import androidx.annotation.Nullable;
+
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
 
@@ -10,21 +13,35 @@ import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements mute/unmute events for remote video tracks.
- * Mute event is fired when there are no frames to be render for 1500ms
- * initially and 500ms after the first frame was received.
+ * Mute event is fired when there are no frames to be render for 3000ms
+ * initially and 1500ms after the first frame was received (by default, see
+ * {@link WebRTCModuleOptions}).
+ *
+ * The tracks of all adapters are checked together by a single periodic task,
+ * on the scheduler thread since it only reads counters. The mute events are
+ * emitted on the executor lane of the PeerConnection of their track, in order
+ * with its other track events.
  */
 public class VideoTrackAdapter {
     static final String TAG = VideoTrackAdapter.class.getCanonicalName();
     static final long INITIAL_MUTE_DELAY = 3000;
     static final long MUTE_DELAY = 1500;
 
-    private Map<String, TrackMuteUnmuteImpl> muteImplMap = new HashMap<>();
+    /**
+     * The tracks of all adapters, checked by {@link #checkTracks()}.
+     */
+    private static final Set<TrackMuteUnmuteImpl> tracks = ConcurrentHashMap.newKeySet();
+    private static ScheduledFuture<?> checkTask;
 
-    private Timer timer = new Timer("VideoTrackMutedTimer");
+    // Also read by the synchronous telemetry getter, from the JS thread.
+    private Map<String, TrackMuteUnmuteImpl> muteImplMap = new ConcurrentHashMap<>();
 
     private final int peerConnectionId;
 
@@ -62,16 +79,70 @@ public class VideoTrackAdapter {
         Log.d(TAG, "Deleted adapter for " + trackId);
     }
 
+    /**
+     * Gets the telemetry of the frames received on the given track.
+     *
+     * @return The telemetry, or {@code null} if the track is not known.
+     */
+    @Nullable
+    public WritableMap getTelemetry(String trackId) {
+        TrackMuteUnmuteImpl onMuteImpl = muteImplMap.get(trackId);
+        return onMuteImpl != null ? onMuteImpl.telemetry.toMap() : null;
+    }
+
+    private static long getInitialMuteDelay() {
+        int delay = WebRTCModuleOptions.getInstance().videoTrackInitialMuteDelayMs;
+        return delay > 0 ? delay : INITIAL_MUTE_DELAY;
+    }
+
+    private static long getMuteDelay() {
+        int delay = WebRTCModuleOptions.getInstance().videoTrackMuteDelayMs;
+        return delay > 0 ? delay : MUTE_DELAY;
+    }
+
+    private static synchronized void addTrack(TrackMuteUnmuteImpl track) {
+        tracks.add(track);
+
+        if (checkTask == null) {
+            long muteDelay = getMuteDelay();
+            checkTask = ThreadUtils.getScheduler().scheduleAtFixedRate(
+                    VideoTrackAdapter::checkTracks, muteDelay, muteDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized void removeTrack(TrackMuteUnmuteImpl track) {
+        tracks.remove(track);
+
+        if (tracks.isEmpty() && checkTask != null) {
+            checkTask.cancel(false);
+            checkTask = null;
+        }
+    }
+
+    private static void checkTracks() {
+        long now = SystemClock.elapsedRealtime();
+        for (TrackMuteUnmuteImpl track : tracks) {
+            track.check(now);
+        }
+    }
+
     /**
      * Implements 'mute'/'unmute' events for remote video tracks through
      * the {@link VideoSink} interface.
      */
     private class TrackMuteUnmuteImpl implements VideoSink {
-        private TimerTask emitMuteTask;
         private volatile boolean disposed;
         private AtomicInteger frameCounter;
         private boolean mutedState;
         private final String trackId;
+        private final VideoTrackTelemetry telemetry = new VideoTrackTelemetry();
+
+        /**
+         * Only accessed by {@link #checkTracks()}, which runs on the scheduler
+         * thread, once {@link #start()} added the track.
+         */
+        private long firstCheckMs;
+        private int lastFrameNumber;
 
         TrackMuteUnmuteImpl(String trackId) {
             this.trackId = trackId;
@@ -81,6 +152,7 @@ public class VideoTrackAdapter {
         @Override
         public void onFrame(VideoFrame frame) {
             frameCounter.addAndGet(1);
+            telemetry.onFrame(frame);
         }
 
         private void start() {
@@ -88,29 +160,24 @@ public class VideoTrackAdapter {
                 return;
             }
 
-            synchronized (this) {
-                if (emitMuteTask != null) {
-                    emitMuteTask.cancel();
-                }
-                emitMuteTask = new TimerTask() {
-                    private int lastFrameNumber = frameCounter.get();
-
-                    @Override
-                    public void run() {
-                        if (disposed) {
-                            return;
-                        }
-                        boolean isMuted = lastFrameNumber == frameCounter.get();
-                        if (isMuted != mutedState) {
-                            mutedState = isMuted;
-                            emitMuteEvent(isMuted);
-                        }
-
-                        lastFrameNumber = frameCounter.get();
-                    }
-                };
-                timer.schedule(emitMuteTask, INITIAL_MUTE_DELAY, MUTE_DELAY);
+            firstCheckMs = SystemClock.elapsedRealtime() + getInitialMuteDelay();
+            lastFrameNumber = frameCounter.get();
+            addTrack(this);
+        }
+
+        void check(long now) {
+            if (disposed || now < firstCheckMs) {
+                return;
+            }
+
+            int frameNumber = frameCounter.get();
+            boolean isMuted = lastFrameNumber == frameNumber;
+            if (isMuted != mutedState) {
+                mutedState = isMuted;
+                emitMuteEvent(isMuted);
             }
+
+            lastFrameNumber = frameNumber;
         }
 
         private void emitMuteEvent(boolean muted) {
@@ -119,19 +186,21 @@ public class VideoTrackAdapter {
             params.putString("trackId", trackId);
             params.putBoolean("muted", muted);
 
-            Log.d(TAG, (muted ? "Mute" : "Unmute") + " event pcId: " + peerConnectionId + " trackId: " + trackId);
+            ThreadUtils.runOnExecutor(peerConnectionId, "videoTrackMuteChanged", () -> {
+                // The track may have been removed meanwhile.
+                if (disposed) {
+                    return;
+                }
+
+                Log.d(TAG, (muted ? "Mute" : "Unmute") + " event pcId: " + peerConnectionId + " trackId: " + trackId);
 
-            VideoTrackAdapter.this.webRTCModule.sendEvent("mediaStreamTrackMuteChanged", params);
+                VideoTrackAdapter.this.webRTCModule.sendEvent("mediaStreamTrackMuteChanged", params);
+            });
         }
 
         void dispose() {
             disposed = true;
-            synchronized (this) {
-                if (emitMuteTask != null) {
-                    emitMuteTask.cancel();
-                    emitMuteTask = null;
-                }
-            }
+            removeTrack(this);
         }
     }
 }
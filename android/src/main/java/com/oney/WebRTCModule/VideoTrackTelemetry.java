@@ -0,0 +1,138 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.VideoFrame;
+
+/**
+ * Lightweight telemetry of the frames received on a remote video track: frame
+ * rate, resolution (and its changes), rotation and a histogram of the gaps
+ * between frames, from which freezes are detected.
+ *
+ * {@link #onFrame(VideoFrame)} is called for every frame, on the thread which
+ * delivers them, so it only updates a few primitives.
+ */
+class VideoTrackTelemetry {
+    /**
+     * Upper bounds (in ms) of the inter-frame gap histogram buckets, the last
+     * bucket holds the longer gaps.
+     */
+    private static final int[] GAP_BUCKET_BOUNDS_MS = { 20, 40, 70, 100, 200, 500, 1000 };
+
+    /**
+     * A gap is considered a freeze if it is longer than both 3 times the
+     * average gap and the average gap plus 150ms (as defined for the
+     * freezeCount stat).
+     */
+    private static final long FREEZE_MIN_EXTRA_GAP_MS = 150;
+
+    private static final long FRAME_RATE_WINDOW_MS = 1000;
+
+    private final long[] gapBuckets = new long[GAP_BUCKET_BOUNDS_MS.length + 1];
+
+    private long frames;
+    private int width;
+    private int height;
+    private int rotation;
+    private long resolutionChanges;
+
+    private long lastFrameNs;
+    private double averageGapMs;
+    private long maxGapMs;
+    private long freezeCount;
+    private long totalFreezeMs;
+
+    private long frameRateWindowStartMs;
+    private long frameRateWindowFrames;
+    private double framesPerSecond;
+
+    synchronized void onFrame(VideoFrame frame) {
+        long nowNs = SystemClock.elapsedRealtimeNanos();
+        frames++;
+
+        int frameWidth = frame.getRotatedWidth();
+        int frameHeight = frame.getRotatedHeight();
+        if (frameWidth != width || frameHeight != height) {
+            if (frames > 1) {
+                resolutionChanges++;
+            }
+            width = frameWidth;
+            height = frameHeight;
+        }
+        rotation = frame.getRotation();
+
+        long nowMs = nowNs / 1000000;
+        if (lastFrameNs != 0) {
+            long gapMs = (nowNs - lastFrameNs) / 1000000;
+            addGap(gapMs);
+        } else {
+            frameRateWindowStartMs = nowMs;
+        }
+        lastFrameNs = nowNs;
+
+        frameRateWindowFrames++;
+        long windowMs = nowMs - frameRateWindowStartMs;
+        if (windowMs >= FRAME_RATE_WINDOW_MS) {
+            framesPerSecond = frameRateWindowFrames * 1000.0 / windowMs;
+            frameRateWindowStartMs = nowMs;
+            frameRateWindowFrames = 0;
+        }
+    }
+
+    private void addGap(long gapMs) {
+        int bucket = 0;
+        while (bucket < GAP_BUCKET_BOUNDS_MS.length && gapMs > GAP_BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        gapBuckets[bucket]++;
+
+        maxGapMs = Math.max(maxGapMs, gapMs);
+
+        if (averageGapMs > 0 && gapMs > 3 * averageGapMs && gapMs > averageGapMs + FREEZE_MIN_EXTRA_GAP_MS) {
+            freezeCount++;
+            totalFreezeMs += gapMs;
+            // Keep freezes out of the average, so they don't hide the next ones.
+            return;
+        }
+
+        // Exponential moving average over roughly the last 30 frames.
+        averageGapMs = averageGapMs == 0 ? gapMs : averageGapMs + (gapMs - averageGapMs) / 30;
+    }
+
+    synchronized WritableMap toMap() {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("frames", frames);
+        map.putInt("width", width);
+        map.putInt("height", height);
+        map.putInt("rotation", rotation);
+        map.putDouble("resolutionChanges", resolutionChanges);
+
+        // The frame rate drops to 0 if frames stopped coming.
+        long sinceLastFrameMs = lastFrameNs == 0 ? 0 : (SystemClock.elapsedRealtimeNanos() - lastFrameNs) / 1000000;
+        map.putDouble("framesPerSecond", sinceLastFrameMs > 2 * FRAME_RATE_WINDOW_MS ? 0 : framesPerSecond);
+        map.putDouble("msSinceLastFrame", sinceLastFrameMs);
+
+        map.putDouble("averageGapMs", averageGapMs);
+        map.putDouble("maxGapMs", maxGapMs);
+        map.putDouble("freezeCount", freezeCount);
+        map.putDouble("totalFreezeMs", totalFreezeMs);
+
+        WritableArray bounds = Arguments.createArray();
+        for (int bound : GAP_BUCKET_BOUNDS_MS) {
+            bounds.pushInt(bound);
+        }
+        map.putArray("gapBucketBoundsMs", bounds);
+
+        WritableArray buckets = Arguments.createArray();
+        for (long count : gapBuckets) {
+            buckets.pushDouble(count);
+        }
+        map.putArray("gapBuckets", buckets);
+
+        return map;
+    }
+}
@@ -0,0 +1,604 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.graphics.RectF;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.uimanager.PixelUtil;
+
+import org.webrtc.EglBase;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.MediaStream;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoFrameDrawer;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders the video of several {@link MediaStream}s into a single surface,
+ * each in its own tile, as laid out from JS. Compared to one
+ * {@link WebRTCView} per stream, it uses a single EGL context and surface and
+ * draws all the tiles in one pass per vsync with a shared {@link GlRectDrawer},
+ * which scales better for large galleries.
+ *
+ * Frames are released as soon as they are drawn, since decoders and capturers
+ * cannot deliver the next frame until the previous one is released: the last
+ * image of each tile is copied into a texture owned by the tile, from which it
+ * is redrawn.
+ */
+public class WebRTCCompositeView extends SurfaceView implements SurfaceHolder.Callback {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The tiles, in drawing order. Replaced as a whole (never modified) when
+     * the layout changes, so it can be read from the render thread.
+     */
+    private volatile List<Tile> tiles = Collections.emptyList();
+
+    /**
+     * The thread on which the tiles are drawn, it holds the EGL context. Only
+     * exists while this view is attached to a window.
+     */
+    @Nullable
+    private HandlerThread renderThread;
+    @Nullable
+    private Handler renderHandler;
+
+    /**
+     * Only accessed on the render thread.
+     */
+    @Nullable
+    private EglBase eglBase;
+    @Nullable
+    private GlRectDrawer drawer;
+    @Nullable
+    private VideoFrameDrawer frameDrawer;
+    private final Matrix drawMatrix = new Matrix();
+
+    /**
+     * The textures of the tiles which were removed while there was no current
+     * context to release them with. Only accessed on the render thread.
+     */
+    private final List<GlTextureFrameBuffer> orphanedTextures = new ArrayList<>();
+
+    /**
+     * Whether a draw pass has been requested for the next vsync.
+     */
+    private final AtomicBoolean drawScheduled = new AtomicBoolean();
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        drawScheduled.set(false);
+        Handler handler = renderHandler;
+        if (handler != null) {
+            handler.post(this::draw);
+        }
+    };
+
+    public WebRTCCompositeView(Context context) {
+        super(context);
+
+        getHolder().addCallback(this);
+    }
+
+    /**
+     * Sets the tiles of this view from their JS representation: an array of
+     * <tt>{ streamURL, x, y, width, height, objectFit?, mirror? }</tt> with the
+     * geometry in layout units, relative to this view.
+     *
+     * Tiles which keep their {@code streamURL} keep rendering without
+     * interruption, only their geometry is updated.
+     */
+    void setTiles(@Nullable ReadableArray array) {
+        Map<String, List<Tile>> oldTiles = new HashMap<>();
+        for (Tile tile : tiles) {
+            List<Tile> list = oldTiles.get(tile.streamURL);
+            if (list == null) {
+                list = new ArrayList<>();
+                oldTiles.put(tile.streamURL, list);
+            }
+            list.add(tile);
+        }
+
+        List<Tile> newTiles = new ArrayList<>();
+        int size = array == null ? 0 : array.size();
+        for (int i = 0; i < size; i++) {
+            ReadableMap map = array.getMap(i);
+            if (map == null || !map.hasKey("streamURL") || map.isNull("streamURL")) {
+                continue;
+            }
+
+            String streamURL = map.getString("streamURL");
+            List<Tile> list = oldTiles.get(streamURL);
+            Tile tile = list != null && !list.isEmpty() ? list.remove(0) : new Tile(streamURL);
+            tile.setLayout(map);
+            newTiles.add(tile);
+        }
+
+        tiles = Collections.unmodifiableList(newTiles);
+
+        for (List<Tile> list : oldTiles.values()) {
+            for (Tile tile : list) {
+                tile.dispose();
+            }
+        }
+        for (Tile tile : newTiles) {
+            tile.resolveTrack();
+        }
+
+        scheduleDraw();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        startRenderThread();
+        for (Tile tile : tiles) {
+            tile.addSink();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        for (Tile tile : tiles) {
+            tile.removeSink();
+        }
+        stopRenderThread();
+
+        super.onDetachedFromWindow();
+    }
+
+    private void startRenderThread() {
+        EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+        if (sharedContext == null) {
+            Log.e(TAG, "Failed to render the composite view!");
+            return;
+        }
+
+        renderThread = new HandlerThread("WebRTCCompositeView");
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        renderHandler.post(() -> {
+            try {
+                eglBase = EglBase.create(sharedContext, EglBase.CONFIG_PLAIN);
+                drawer = new GlRectDrawer();
+                frameDrawer = new VideoFrameDrawer();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to create the EGL context of the composite view", e);
+                eglBase = null;
+            }
+        });
+
+        // The surface may have been created before this view was attached.
+        SurfaceHolder holder = getHolder();
+        if (holder.getSurface() != null && holder.getSurface().isValid()) {
+            surfaceCreated(holder);
+        }
+    }
+
+    private void stopRenderThread() {
+        Handler handler = renderHandler;
+        if (handler == null) {
+            return;
+        }
+
+        renderHandler = null;
+        org.webrtc.ThreadUtils.invokeAtFrontUninterruptibly(handler, () -> {
+            if (eglBase != null && !eglBase.hasSurface()) {
+                // The GL resources can only be released with a current context.
+                eglBase.createDummyPbufferSurface();
+                eglBase.makeCurrent();
+            }
+            for (Tile tile : tiles) {
+                tile.releaseTexture();
+            }
+            for (GlTextureFrameBuffer texture : orphanedTextures) {
+                texture.release();
+            }
+            orphanedTextures.clear();
+            if (frameDrawer != null) {
+                frameDrawer.release();
+                frameDrawer = null;
+            }
+            if (drawer != null) {
+                drawer.release();
+                drawer = null;
+            }
+            if (eglBase != null) {
+                eglBase.release();
+                eglBase = null;
+            }
+        });
+        renderThread.quitSafely();
+        renderThread = null;
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        Handler handler = renderHandler;
+        if (handler == null) {
+            return;
+        }
+
+        handler.post(() -> {
+            if (eglBase != null && !eglBase.hasSurface()) {
+                // The EGL context is only used by this thread, so it stays
+                // current for all the draw passes.
+                eglBase.createSurface(holder.getSurface());
+                eglBase.makeCurrent();
+            }
+        });
+        scheduleDraw();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        scheduleDraw();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        Handler handler = renderHandler;
+        if (handler == null) {
+            return;
+        }
+
+        // The surface must not be used once this returns.
+        org.webrtc.ThreadUtils.invokeAtFrontUninterruptibly(handler, () -> {
+            if (eglBase != null) {
+                eglBase.detachCurrent();
+                eglBase.releaseSurface();
+            }
+        });
+    }
+
+    /**
+     * Requests a draw pass on the next vsync. Several requests before that
+     * (e.g. frames of several tiles) result in a single pass.
+     */
+    private void scheduleDraw() {
+        if (drawScheduled.compareAndSet(false, true)) {
+            post(() -> Choreographer.getInstance().postFrameCallback(frameCallback));
+        }
+    }
+
+    /**
+     * Draws the last image of every tile. Runs on the render thread.
+     */
+    private void draw() {
+        if (eglBase == null || !eglBase.hasSurface()) {
+            // Do not hold the frames back until there is a surface.
+            for (Tile tile : tiles) {
+                tile.dropPendingFrame();
+            }
+            return;
+        }
+
+        List<Tile> currentTiles = tiles;
+        for (Tile tile : currentTiles) {
+            tile.updateTexture();
+        }
+        for (GlTextureFrameBuffer texture : orphanedTextures) {
+            texture.release();
+        }
+        orphanedTextures.clear();
+
+        int surfaceWidth = eglBase.surfaceWidth();
+        int surfaceHeight = eglBase.surfaceHeight();
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        GLES20.glClearColor(0, 0, 0, 1);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        for (Tile tile : currentTiles) {
+            if (tile.texture != null) {
+                drawTile(tile, surfaceHeight);
+            }
+        }
+
+        eglBase.swapBuffers();
+    }
+
+    private void drawTile(Tile tile, int surfaceHeight) {
+        RectF rect;
+        boolean cover;
+        boolean mirror;
+        synchronized (tile) {
+            rect = new RectF(tile.rect);
+            cover = tile.cover;
+            mirror = tile.mirror;
+        }
+
+        int tileWidth = Math.round(rect.width());
+        int tileHeight = Math.round(rect.height());
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            return;
+        }
+
+        GlTextureFrameBuffer texture = tile.texture;
+        float frameAspectRatio = texture.getWidth() / (float) texture.getHeight();
+        float tileAspectRatio = tileWidth / (float) tileHeight;
+        float scaleX = 1;
+        float scaleY = 1;
+        int left = Math.round(rect.left);
+        int top = Math.round(rect.top);
+        int width = tileWidth;
+        int height = tileHeight;
+
+        if (cover) {
+            // Crop the frame to the aspect ratio of the tile.
+            if (frameAspectRatio > tileAspectRatio) {
+                scaleX = tileAspectRatio / frameAspectRatio;
+            } else {
+                scaleY = frameAspectRatio / tileAspectRatio;
+            }
+        } else {
+            // Letterbox or pillarbox the frame inside the tile.
+            Point size = RendererCommon.getDisplaySize(
+                    RendererCommon.ScalingType.SCALE_ASPECT_FIT, frameAspectRatio, tileWidth, tileHeight);
+            left += (tileWidth - size.x) / 2;
+            top += (tileHeight - size.y) / 2;
+            width = size.x;
+            height = size.y;
+        }
+
+        drawMatrix.reset();
+        drawMatrix.preTranslate(0.5f, 0.5f);
+        drawMatrix.preScale(mirror ? -1f : 1f, 1f);
+        drawMatrix.preScale(scaleX, scaleY);
+        drawMatrix.preTranslate(-0.5f, -0.5f);
+
+        // The origin of the GL viewport is the bottom left corner.
+        drawer.drawRgb(texture.getTextureId(), RendererCommon.convertMatrixFromAndroidGraphicsMatrix(drawMatrix),
+                texture.getWidth(), texture.getHeight(), left, surfaceHeight - top - height, width, height);
+    }
+
+    /**
+     * A tile of this view: the area in which the first video track of a
+     * {@link MediaStream} is rendered.
+     */
+    private class Tile implements VideoSink {
+        final String streamURL;
+
+        /**
+         * The layout of the tile, in pixels relative to this view. Guarded by
+         * this instance.
+         */
+        final RectF rect = new RectF();
+        boolean cover;
+        boolean mirror;
+
+        /**
+         * The last frame received, retained until it is drawn into
+         * {@link #texture} or replaced. Guarded by this instance.
+         */
+        @Nullable
+        private VideoFrame pendingFrame;
+        private boolean disposed;
+
+        /**
+         * The last image of the tile, rotated. Only accessed on the render
+         * thread.
+         */
+        @Nullable
+        GlTextureFrameBuffer texture;
+
+        /**
+         * Written on the UI thread, read when frames are delivered.
+         */
+        private volatile boolean sinkAdded;
+
+        /**
+         * Only accessed on the UI thread.
+         */
+        @Nullable
+        private VideoTrack videoTrack;
+        private boolean resolving;
+
+        Tile(String streamURL) {
+            this.streamURL = streamURL;
+        }
+
+        void setLayout(ReadableMap map) {
+            float x = getFloat(map, "x");
+            float y = getFloat(map, "y");
+            float width = getFloat(map, "width");
+            float height = getFloat(map, "height");
+
+            synchronized (this) {
+                rect.set(PixelUtil.toPixelFromDIP(x),
+                        PixelUtil.toPixelFromDIP(y),
+                        PixelUtil.toPixelFromDIP(x + width),
+                        PixelUtil.toPixelFromDIP(y + height));
+                cover = map.hasKey("objectFit") && "cover".equals(map.getString("objectFit"));
+                mirror = map.hasKey("mirror") && map.getBoolean("mirror");
+            }
+        }
+
+        private float getFloat(ReadableMap map, String key) {
+            return map.hasKey(key) && !map.isNull(key) ? (float) map.getDouble(key) : 0;
+        }
+
+        /**
+         * Looks the video track of the tile up and starts rendering it.
+         */
+        void resolveTrack() {
+            if (videoTrack != null || resolving) {
+                return;
+            }
+
+            ReactContext reactContext = (ReactContext) getContext();
+            WebRTCModule module = reactContext.getNativeModule(WebRTCModule.class);
+
+            VideoTrack knownTrack = module.getVideoTrackForReactTag(streamURL);
+            if (knownTrack != null) {
+                setVideoTrack(knownTrack);
+                return;
+            }
+
+            // The stream may still be being created, look it up again after
+            // the pending work.
+            resolving = true;
+            ThreadUtils.runOnExecutor("compositeViewGetVideoTrack", () -> {
+                VideoTrack track = module.getVideoTrackForReactTag(streamURL);
+                if (track == null) {
+                    Log.w(TAG, "No video stream for react tag: " + streamURL);
+                }
+
+                post(() -> {
+                    resolving = false;
+                    if (!disposed && track != null) {
+                        setVideoTrack(track);
+                    }
+                });
+            });
+        }
+
+        private void setVideoTrack(VideoTrack track) {
+            videoTrack = track;
+            if (ViewCompat.isAttachedToWindow(WebRTCCompositeView.this)) {
+                addSink();
+            }
+        }
+
+        void addSink() {
+            if (sinkAdded || videoTrack == null) {
+                return;
+            }
+            sinkAdded = true;
+
+            VideoTrack track = videoTrack;
+            ThreadUtils.runOnExecutor("compositeViewAddSink", () -> {
+                try {
+                    track.addSink(this);
+                } catch (Throwable tr) {
+                    // XXX If WebRTCModule#mediaStreamTrackRelease has already been
+                    // invoked on the track, then it is no longer safe to call addSink
+                    // on the instance, it will throw IllegalStateException.
+                    Log.e(TAG, "Failed to add composite view sink", tr);
+                }
+            });
+        }
+
+        void removeSink() {
+            if (sinkAdded) {
+                sinkAdded = false;
+
+                VideoTrack track = videoTrack;
+                ThreadUtils.runOnExecutor("compositeViewRemoveSink", () -> {
+                    try {
+                        track.removeSink(this);
+                    } catch (Throwable tr) {
+                        // The track may have been released already.
+                    }
+                });
+            }
+
+            dropPendingFrame();
+        }
+
+        synchronized void dropPendingFrame() {
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                pendingFrame = null;
+            }
+        }
+
+        void dispose() {
+            synchronized (this) {
+                disposed = true;
+            }
+            removeSink();
+
+            Handler handler = renderHandler;
+            if (handler != null) {
+                handler.post(() -> {
+                    if (texture != null) {
+                        // Released with the next draw pass, or with the
+                        // render thread, when a context is current.
+                        orphanedTextures.add(texture);
+                        texture = null;
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onFrame(VideoFrame videoFrame) {
+            synchronized (this) {
+                if (disposed || !sinkAdded) {
+                    return;
+                }
+                if (pendingFrame != null) {
+                    pendingFrame.release();
+                }
+                videoFrame.retain();
+                pendingFrame = videoFrame;
+            }
+
+            scheduleDraw();
+        }
+
+        /**
+         * Draws the pending frame, if any, into the texture of the tile and
+         * releases it. Runs on the render thread.
+         */
+        void updateTexture() {
+            VideoFrame frame;
+            synchronized (this) {
+                frame = pendingFrame;
+                pendingFrame = null;
+            }
+            if (frame == null) {
+                return;
+            }
+
+            try {
+                int width = frame.getRotatedWidth();
+                int height = frame.getRotatedHeight();
+                if (texture == null) {
+                    texture = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+                }
+                texture.setSize(width, height);
+
+                GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, texture.getFrameBufferId());
+                frameDrawer.drawFrame(frame, drawer, /* additionalRenderMatrix */ null, 0, 0, width, height);
+            } finally {
+                frame.release();
+            }
+        }
+
+        /**
+         * Runs on the render thread, with a current context.
+         */
+        void releaseTexture() {
+            if (texture != null) {
+                texture.release();
+                texture = null;
+            }
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package com.oney.WebRTCModule;
 
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
 import android.util.Log;
 import android.util.Pair;
-import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -25,6 +28,12 @@ import com.oney.WebRTCModule.webrtcutils.H264AndSoftwareVideoDecoderFactory;
 import com.oney.WebRTCModule.webrtcutils.H264AndSoftwareVideoEncoderFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.cert.CertificateFactory;
@@ -39,31 +48,48 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @ReactModule(name = "WebRTCModule")
 public class WebRTCModule extends ReactContextBaseJavaModule {
     static final String TAG = WebRTCModule.class.getCanonicalName();
 
+    // Bounds of the data channel file transfer chunk size. 16 KiB is the largest size
+    // which is safe to use with all browsers, larger chunks are clamped to it.
+    private static final int MIN_FILE_CHUNK_SIZE = 1024;
+    private static final int MAX_FILE_CHUNK_SIZE = 16 * 1024;
+
     PeerConnectionFactory mFactory;
     VideoEncoderFactory mVideoEncoderFactory;
     VideoDecoderFactory mVideoDecoderFactory;
     AudioDeviceModule mAudioDeviceModule;
 
     // Need to expose the peer connection codec factories here to get capabilities
-    private final SparseArray<PeerConnectionObserver> mPeerConnectionObservers;
+    // PeerConnection APIs run on per-PeerConnection executor lanes, so these are accessed concurrently.
+    private final Map<Integer, PeerConnectionObserver> mPeerConnectionObservers;
     final Map<String, MediaStream> localStreams;
 
+    // All the local and remote streams by react tag, for lookups from any thread.
+    final StreamIndex streamIndex = new StreamIndex();
+
     // Store generated certificates by ID to avoid exposing private keys to JS
     private static final Map<String, RtcCertificatePem> mCertificates = new HashMap<>();
 
     private final GetUserMediaImpl getUserMediaImpl;
 
+    @Nullable
+    private final EventBatcher eventBatcher;
+
+    private ScheduledFuture<?> executorMetricsReport;
+
     public WebRTCModule(ReactApplicationContext reactContext) {
         super(reactContext);
 
-        mPeerConnectionObservers = new SparseArray<>();
-        localStreams = new HashMap<>();
+        mPeerConnectionObservers = new ConcurrentHashMap<>();
+        localStreams = new ConcurrentHashMap<>();
 
         WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
 
@@ -119,6 +145,32 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         mAudioDeviceModule = adm;
 
         getUserMediaImpl = new GetUserMediaImpl(this, reactContext);
+
+        if (options.eventBatchingWindowMs > 0) {
+            eventBatcher =
+                    new EventBatcher(this::emitEvent, options.eventBatchingWindowMs, options.eventBatchingMaxEvents);
+        } else {
+            eventBatcher = null;
+        }
+
+        if (options.enableExecutorMetrics) {
+            setExecutorMetricsEnabled(true, options.executorMetricsReportIntervalMs);
+        }
+
+        // The idle renderers of the pool are views of the Activity, let go of
+        // them together with it.
+        reactContext.addLifecycleEventListener(new LifecycleEventListener() {
+            @Override
+            public void onHostResume() {}
+
+            @Override
+            public void onHostPause() {}
+
+            @Override
+            public void onHostDestroy() {
+                RendererPool.getInstance().clear();
+            }
+        });
     }
 
     @NonNull
@@ -133,9 +185,17 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     }
 
     void sendEvent(String eventName, @Nullable ReadableMap params) {
+        if (eventBatcher != null) {
+            eventBatcher.send(eventName, params);
+        } else {
+            emitEvent(eventName, params);
+        }
+    }
+
+    private void emitEvent(String eventName, @Nullable Object data) {
         getReactApplicationContext()
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName, params);
+                .emit(eventName, data);
     }
 
     private PeerConnection.IceServer createIceServer(String url) {
@@ -403,7 +463,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
         try {
             return (boolean) ThreadUtils
-                    .submitToExecutor(() -> {
+                    .submitToExecutor(id, "peerConnectionInit", () -> {
                         PeerConnectionObserver observer = new PeerConnectionObserver(this, id);
                         PeerConnection peerConnection = mFactory.createPeerConnection(rtcConfiguration, observer);
                         if (peerConnection == null) {
@@ -420,23 +480,15 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         }
     }
 
-    // Must be called in the executor.
+    // May be called on any thread, streams which are still being created on
+    // the executor may not be found yet though.
     MediaStream getStreamForReactTag(String streamReactTag) {
-        MediaStream stream = localStreams.get(streamReactTag);
-
-        if (stream != null) {
-            return stream;
-        }
-
-        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-            PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
-            stream = pco.remoteStreams.get(streamReactTag);
-            if (stream != null) {
-                return stream;
-            }
-        }
+        return streamIndex.getStream(streamReactTag);
+    }
 
-        return null;
+    // May be called on any thread, same as getStreamForReactTag.
+    VideoTrack getVideoTrackForReactTag(String streamReactTag) {
+        return streamIndex.getVideoTrack(streamReactTag);
     }
 
     public MediaStreamTrack getTrack(int pcId, String trackId) {
@@ -493,7 +545,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WritableMap peerConnectionAddTransceiver(int id, ReadableMap options) {
         try {
             return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+                    .submitToExecutor(id, "peerConnectionAddTransceiver", (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                         if (pco == null) {
                             Log.d(TAG, "peerConnectionAddTransceiver() peerConnection is null");
@@ -507,9 +559,13 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                                     SerializeUtils.parseTransceiverOptions(options.getMap("init")));
                         } else if (options.hasKey("trackId")) {
                             String trackId = options.getString("trackId");
-                            MediaStreamTrack track = getLocalTrack(trackId);
-                            transceiver = pco.addTransceiver(
-                                    track, SerializeUtils.parseTransceiverOptions(options.getMap("init")));
+                            RtpTransceiver.RtpTransceiverInit init =
+                                    SerializeUtils.parseTransceiverOptions(options.getMap("init"));
+                            // Local tracks are used on the global executor, see ThreadUtils.
+                            transceiver = ThreadUtils
+                                    .submitToExecutor("peerConnectionAddTransceiverTrack",
+                                            () -> pco.addTransceiver(getLocalTrack(trackId), init))
+                                    .get();
 
                         } else {
                             // This should technically never happen as the JS side checks for that.
@@ -539,19 +595,13 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WritableMap peerConnectionAddTrack(int id, String trackId, ReadableMap options) {
         try {
             return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+                    .submitToExecutor(id, "peerConnectionAddTrack", (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                         if (pco == null) {
                             Log.d(TAG, "peerConnectionAddTrack() peerConnection is null");
                             return null;
                         }
 
-                        MediaStreamTrack track = getLocalTrack(trackId);
-                        if (track == null) {
-                            Log.w(TAG, "peerConnectionAddTrack() couldn't find track " + trackId);
-                            return null;
-                        }
-
                         List<String> streamIds = new ArrayList<>();
                         if (options.hasKey("streamIds")) {
                             ReadableArray rawStreamIds = options.getArray("streamIds");
@@ -561,7 +611,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                                 }
                             }
                         }
-                        RtpSender sender = pco.getPeerConnection().addTrack(track, streamIds);
+
+                        // Local tracks are used on the global executor, see ThreadUtils.
+                        RtpSender sender = ThreadUtils.submitToExecutor("peerConnectionAddTrackLocal", () -> {
+                            MediaStreamTrack track = getLocalTrack(trackId);
+                            if (track == null) {
+                                Log.w(TAG, "peerConnectionAddTrack() couldn't find track " + trackId);
+                                return null;
+                            }
+                            return pco.getPeerConnection().addTrack(track, streamIds);
+                        }).get();
+                        if (sender == null) {
+                            return null;
+                        }
 
                         // Need to get the corresponding transceiver as well
                         RtpTransceiver transceiver = pco.getTransceiver(sender.id());
@@ -585,7 +647,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public boolean peerConnectionRemoveTrack(int id, String senderId) {
         try {
             return (boolean) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+                    .submitToExecutor(id, "peerConnectionRemoveTrack", (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                         if (pco == null) {
                             Log.d(TAG, "peerConnectionRemoveTrack() peerConnection is null");
@@ -608,7 +670,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderSetParameters(int id, String senderId, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "senderSetParameters", () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -637,7 +699,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void transceiverStop(int id, String senderId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "transceiverStop", () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -663,7 +725,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderReplaceTrack(int id, String senderId, String trackId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "senderReplaceTrack", () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -679,8 +741,11 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                     return;
                 }
 
-                MediaStreamTrack track = getLocalTrack(trackId);
-                sender.setTrack(track, false);
+                // Local tracks are used on the global executor, see ThreadUtils.
+                ThreadUtils
+                        .submitToExecutor(
+                                "senderReplaceTrackLocal", () -> sender.setTrack(getLocalTrack(trackId), false))
+                        .get();
                 promise.resolve(true);
             } catch (Exception e) {
                 Log.d(TAG, "senderReplaceTrack(): " + e.getMessage());
@@ -691,7 +756,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void transceiverSetDirection(int id, String senderId, String direction, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "transceiverSetDirection", () -> {
             WritableMap identifier = Arguments.createMap();
             WritableMap params = Arguments.createMap();
             identifier.putInt("peerConnectionId", id);
@@ -722,7 +787,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public boolean transceiverSetCodecPreferences(int id, String senderId, ReadableArray codecPreferences) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "transceiverSetCodecPreferences", () -> {
             WritableMap identifier = Arguments.createMap();
             WritableMap params = Arguments.createMap();
             identifier.putInt("peerConnectionId", id);
@@ -785,30 +850,32 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void getDisplayMedia(ReadableMap constraints, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> getUserMediaImpl.getDisplayMedia(constraints, promise));
+        ThreadUtils.runOnExecutor("getDisplayMedia", () -> getUserMediaImpl.getDisplayMedia(constraints, promise));
     }
 
     @ReactMethod
     public void getUserMedia(ReadableMap constraints, Callback successCallback, Callback errorCallback) {
-        ThreadUtils.runOnExecutor(() -> getUserMediaImpl.getUserMedia(constraints, successCallback, errorCallback));
+        ThreadUtils.runOnExecutor(
+                "getUserMedia", () -> getUserMediaImpl.getUserMedia(constraints, successCallback, errorCallback));
     }
 
     @ReactMethod
     public void enumerateDevices(Callback callback) {
-        ThreadUtils.runOnExecutor(() -> callback.invoke(getUserMediaImpl.enumerateDevices()));
+        ThreadUtils.runOnExecutor("enumerateDevices", () -> callback.invoke(getUserMediaImpl.enumerateDevices()));
     }
 
     @ReactMethod
     public void mediaStreamCreate(String id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("mediaStreamCreate", () -> {
             MediaStream mediaStream = mFactory.createLocalMediaStream(id);
             localStreams.put(id, mediaStream);
+            streamIndex.put(id, mediaStream);
         });
     }
 
     @ReactMethod
     public void mediaStreamAddTrack(String streamId, int pcId, String trackId) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("mediaStreamAddTrack", () -> {
             MediaStream stream = localStreams.get(streamId);
             if (stream == null) {
                 Log.d(TAG, "mediaStreamAddTrack() could not find stream " + streamId);
@@ -826,13 +893,14 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 stream.addTrack((AudioTrack) track);
             } else if ("video".equals(kind)) {
                 stream.addTrack((VideoTrack) track);
+                streamIndex.put(streamId, stream);
             }
         });
     }
 
     @ReactMethod
     public void mediaStreamRemoveTrack(String streamId, int pcId, String trackId) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("mediaStreamRemoveTrack", () -> {
             MediaStream stream = localStreams.get(streamId);
             if (stream == null) {
                 Log.d(TAG, "mediaStreamRemoveTrack() could not find stream " + streamId);
@@ -850,26 +918,28 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 stream.removeTrack((AudioTrack) track);
             } else if ("video".equals(kind)) {
                 stream.removeTrack((VideoTrack) track);
+                streamIndex.put(streamId, stream);
             }
         });
     }
 
     @ReactMethod
     public void mediaStreamRelease(String id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("mediaStreamRelease", () -> {
             MediaStream stream = localStreams.get(id);
             if (stream == null) {
                 Log.d(TAG, "mediaStreamRelease() stream is null");
                 return;
             }
             localStreams.remove(id);
+            streamIndex.remove(id);
             stream.dispose();
         });
     }
 
     @ReactMethod
     public void mediaStreamTrackRelease(String id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("mediaStreamTrackRelease", () -> {
             MediaStreamTrack track = getLocalTrack(id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackRelease() track is null");
@@ -882,7 +952,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackSetEnabled(int pcId, String id, boolean enabled) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, "mediaStreamTrackSetEnabled", () -> {
             MediaStreamTrack track = getTrack(pcId, id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackSetEnabled() could not find track " + id);
@@ -899,7 +969,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackApplyConstraints(String id, ReadableMap constraints, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("mediaStreamTrackApplyConstraints", () -> {
             MediaStreamTrack track = getLocalTrack(id);
             if (track != null) {
                 getUserMediaImpl.applyConstraints(id, constraints, promise);
@@ -911,7 +981,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackSetVolume(int pcId, String id, double volume) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, "mediaStreamTrackSetVolume", () -> {
             MediaStreamTrack track = getTrack(pcId, id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackSetVolume() could not find track " + id);
@@ -957,12 +1027,18 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackSetVideoEffects(String id, ReadableArray names) {
-        ThreadUtils.runOnExecutor(() -> { getUserMediaImpl.setVideoEffects(id, names); });
+        ThreadUtils.runOnExecutor(
+                "mediaStreamTrackSetVideoEffects", () -> { getUserMediaImpl.setVideoEffects(id, names); });
+    }
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap mediaStreamTrackGetVideoEffectsStats(String id) {
+        return getUserMediaImpl.getVideoEffectsStats(id);
     }
 
     @ReactMethod
     public void peerConnectionSetConfiguration(ReadableMap configuration, int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "peerConnectionSetConfiguration", () -> {
             PeerConnection peerConnection = getPeerConnection(id);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionSetConfiguration() peerConnection is null");
@@ -974,7 +1050,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionCreateOffer(int id, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "peerConnectionCreateOffer", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             PeerConnection peerConnection = pco.getPeerConnection();
 
@@ -992,12 +1068,13 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             final SdpObserver observer = new SdpObserver() {
                 @Override
                 public void onCreateFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(
+                            id, "peerConnectionCreateOffer", () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
 
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, "peerConnectionCreateOffer", () -> {
                         WritableMap params = Arguments.createMap();
                         WritableMap sdpInfo = Arguments.createMap();
 
@@ -1037,7 +1114,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionCreateAnswer(int id, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "peerConnectionCreateAnswer", () -> {
             PeerConnection peerConnection = getPeerConnection(id);
 
             if (peerConnection == null) {
@@ -1049,12 +1126,13 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             final SdpObserver observer = new SdpObserver() {
                 @Override
                 public void onCreateFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(
+                            id, "peerConnectionCreateAnswer", () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
 
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, "peerConnectionCreateAnswer", () -> {
                         WritableMap params = Arguments.createMap();
                         WritableMap sdpInfo = Arguments.createMap();
 
@@ -1081,7 +1159,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetLocalDescription(int pcId, ReadableMap desc, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, "peerConnectionSetLocalDescription", () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionSetLocalDescription() peerConnection is null");
@@ -1095,7 +1173,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(pcId, "peerConnectionSetLocalDescription", () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         WritableMap params = Arguments.createMap();
 
@@ -1118,7 +1196,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(pcId,
+                            "peerConnectionSetLocalDescription",
+                            () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             };
 
@@ -1136,7 +1216,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetRemoteDescription(int id, ReadableMap desc, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "peerConnectionSetRemoteDescription", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             PeerConnection peerConnection = pco.getPeerConnection();
 
@@ -1160,7 +1240,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, "peerConnectionSetRemoteDescription", () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         WritableMap params = Arguments.createMap();
 
@@ -1196,7 +1276,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id,
+                            "peerConnectionSetRemoteDescription",
+                            () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             };
 
@@ -1208,7 +1290,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WritableMap receiverGetCapabilities(String kind) {
         try {
             return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+                    .submitToExecutor("receiverGetCapabilities", (Callable<Object>) () -> {
                         MediaStreamTrack.MediaType mediaType;
                         if (kind.equals("audio")) {
                             mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
@@ -1232,7 +1314,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WritableMap senderGetCapabilities(String kind) {
         try {
             return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+                    .submitToExecutor("senderGetCapabilities", (Callable<Object>) () -> {
                         MediaStreamTrack.MediaType mediaType;
                         if (kind.equals("audio")) {
                             mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
@@ -1253,34 +1335,34 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     }
 
     @ReactMethod
-    public void receiverGetStats(int pcId, String receiverId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+    public void receiverGetStats(int pcId, String receiverId, @Nullable ReadableMap filter, Promise promise) {
+        ThreadUtils.runOnExecutor(pcId, "receiverGetStats", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "receiverGetStats() peerConnection is null");
                 promise.resolve(StringUtils.statsToJSON(new RTCStatsReport(0, new HashMap<>())));
             } else {
-                pco.receiverGetStats(receiverId, promise);
+                pco.receiverGetStats(receiverId, StatsFilter.fromMap(filter), promise);
             }
         });
     }
 
     @ReactMethod
-    public void senderGetStats(int pcId, String senderId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+    public void senderGetStats(int pcId, String senderId, @Nullable ReadableMap filter, Promise promise) {
+        ThreadUtils.runOnExecutor(pcId, "senderGetStats", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "senderGetStats() peerConnection is null");
                 promise.resolve(StringUtils.statsToJSON(new RTCStatsReport(0, new HashMap<>())));
             } else {
-                pco.senderGetStats(senderId, promise);
+                pco.senderGetStats(senderId, StatsFilter.fromMap(filter), promise);
             }
         });
     }
 
     @ReactMethod
     public void peerConnectionAddICECandidate(int pcId, ReadableMap candidateMap, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, "peerConnectionAddICECandidate", () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionAddICECandidate() peerConnection is null");
@@ -1304,7 +1386,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             peerConnection.addIceCandidate(candidate, new AddIceObserver() {
                 @Override
                 public void onAddSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(pcId, "peerConnectionAddICECandidate", () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         SessionDescription newSdp = peerConnection.getRemoteDescription();
                         newSdpMap.putString("type", newSdp.type.canonicalForm());
@@ -1315,28 +1397,137 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onAddFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(
+                            pcId, "peerConnectionAddICECandidate", () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             });
         });
     }
 
     @ReactMethod
-    public void peerConnectionGetStats(int peerConnectionId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+    public void peerConnectionGetStats(int peerConnectionId, @Nullable ReadableMap filter, Promise promise) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "peerConnectionGetStats", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionGetStats() peerConnection is null");
                 promise.resolve(StringUtils.statsToJSON(new RTCStatsReport(0, new HashMap<>())));
             } else {
-                pco.getStats(promise);
+                pco.getStats(StatsFilter.fromMap(filter), promise);
+            }
+        });
+    }
+
+    /**
+     * Emits the changes in the stats of the PeerConnection every
+     * {@code intervalMs} as {@code peerConnectionStatsDelta} events, the first
+     * one holding the full report. Nothing is emitted when nothing changed.
+     *
+     * @param filter the stats types and member names to consider:
+     *               <tt>{ types?: string[], members?: string[] }</tt>, or
+     *               {@code null} for all
+     */
+    @ReactMethod
+    public void peerConnectionSubscribeStats(int peerConnectionId, double intervalMs, @Nullable ReadableMap filter) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "peerConnectionSubscribeStats", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionSubscribeStats() peerConnection is null");
+                return;
+            }
+
+            if (intervalMs <= 0) {
+                Log.w(TAG, "peerConnectionSubscribeStats() invalid interval: " + intervalMs);
+                return;
             }
+
+            pco.subscribeStats((long) intervalMs, StatsFilter.fromMap(filter));
         });
     }
 
+    @ReactMethod
+    public void peerConnectionUnsubscribeStats(int peerConnectionId) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "peerConnectionUnsubscribeStats", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionUnsubscribeStats() peerConnection is null");
+                return;
+            }
+
+            pco.unsubscribeStats();
+        });
+    }
+
+    /**
+     * Starts deriving QoS metrics (bitrates, packet loss, jitter, round-trip
+     * time, decoding time, etc.) from the stats of the PeerConnection, sampled
+     * every {@code intervalMs}, over the last {@code windowSize} samples.
+     */
+    @ReactMethod
+    public void peerConnectionStartQosMonitor(
+            int peerConnectionId, double intervalMs, double windowSize, boolean emitEvents) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "peerConnectionStartQosMonitor", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionStartQosMonitor() peerConnection is null");
+                return;
+            }
+
+            if (intervalMs <= 0 || windowSize < 1) {
+                Log.w(TAG, "peerConnectionStartQosMonitor() invalid interval or window size");
+                return;
+            }
+
+            pco.startQosMonitor((long) intervalMs, (int) windowSize, emitEvents);
+        });
+    }
+
+    @ReactMethod
+    public void peerConnectionStopQosMonitor(int peerConnectionId) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "peerConnectionStopQosMonitor", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionStopQosMonitor() peerConnection is null");
+                return;
+            }
+
+            pco.stopQosMonitor();
+        });
+    }
+
+    /**
+     * Gets the current QoS metrics of the PeerConnection, or {@code null} if
+     * they are not being monitored.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap peerConnectionGetQosMetrics(int peerConnectionId) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+            Log.d(TAG, "peerConnectionGetQosMetrics() peerConnection is null");
+            return null;
+        }
+
+        return pco.getQosMetrics();
+    }
+
+    /**
+     * Gets the telemetry of the frames received on a remote video track (frame
+     * rate, resolution, inter-frame gaps and freezes), or {@code null} if the
+     * track is not known.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap mediaStreamTrackGetTelemetry(int pcId, String trackId) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
+        if (pco == null) {
+            Log.d(TAG, "mediaStreamTrackGetTelemetry() peerConnection is null");
+            return null;
+        }
+
+        return pco.getVideoTrackTelemetry(trackId);
+    }
+
     @ReactMethod
     public void peerConnectionClose(int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "peerConnectionClose", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionClose() peerConnection is null");
@@ -1348,19 +1539,30 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionDispose(int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, "peerConnectionDispose", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionDispose() peerConnection is null");
+                return;
+            }
+
+            // The remote tracks are disposed along with the PeerConnection, on the global
+            // executor which owns the tracks (see ThreadUtils). This lane waits meanwhile.
+            try {
+                ThreadUtils.submitToExecutor("peerConnectionDisposeTracks", () -> {
+                    pco.dispose();
+                    return null;
+                }).get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(TAG, "peerConnectionDispose() " + e.getMessage());
             }
-            pco.dispose();
             mPeerConnectionObservers.remove(id);
         });
     }
 
     @ReactMethod
     public void peerConnectionRestartIce(int pcId) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, "peerConnectionRestartIce", () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.w(TAG, "peerConnectionRestartIce() peerConnection is null");
@@ -1375,7 +1577,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WritableMap createDataChannel(int peerConnectionId, String label, ReadableMap config) {
         try {
             return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
+                    .submitToExecutor(peerConnectionId, "createDataChannel", (Callable<Object>) () -> {
                         PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
                         if (pco == null || pco.getPeerConnection() == null) {
                             Log.d(TAG, "createDataChannel() peerConnection is null");
@@ -1392,7 +1594,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelClose(int peerConnectionId, String reactTag) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelClose", () -> {
             // Forward to PeerConnectionObserver which deals with DataChannels
             // because DataChannel is owned by PeerConnection.
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
@@ -1407,7 +1609,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelDispose(int peerConnectionId, String reactTag) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelDispose", () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "dataChannelDispose() peerConnection is null");
@@ -1420,7 +1622,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelSend(int peerConnectionId, String reactTag, String data, String type) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSend", () -> {
             // Forward to PeerConnectionObserver which deals with DataChannels
             // because DataChannel is owned by PeerConnection.
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
@@ -1433,9 +1635,165 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    @ReactMethod
+    public void dataChannelSendBatch(
+            int peerConnectionId, String reactTag, ReadableArray messages, double maxBufferedAmount, Promise promise) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSendBatch", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "dataChannelSendBatch() peerConnection is null");
+                promise.reject(new Exception("PeerConnection not found"));
+                return;
+            }
+
+            int sent = pco.dataChannelSendBatch(reactTag, messages, (long) maxBufferedAmount);
+            if (sent < 0) {
+                promise.reject(new Exception("DataChannel not found"));
+                return;
+            }
+
+            promise.resolve(sent);
+        });
+    }
+
+    /**
+     * Streams a local file (a file path, or a file or content URI) on a data
+     * channel, in binary messages of {@code chunkSize} bytes. The promise is
+     * resolved with the number of bytes sent once all of them were queued.
+     */
+    @ReactMethod
+    public void dataChannelSendFile(
+            int peerConnectionId, String reactTag, String uri, double chunkSize, Promise promise) {
+        // The file is opened on the I/O thread, content providers may be slow.
+        ThreadUtils.runOnIoExecutor("dataChannelOpenFile", () -> {
+            InputStream inputStream;
+            long size;
+            try {
+                ContentResolver contentResolver = getReactApplicationContext().getContentResolver();
+                AssetFileDescriptor afd = contentResolver.openAssetFileDescriptor(parseFileUri(uri), "r");
+                if (afd == null) {
+                    throw new FileNotFoundException(uri);
+                }
+                size = afd.getLength();
+                inputStream = afd.createInputStream();
+            } catch (IOException | SecurityException e) {
+                Log.d(TAG, "dataChannelSendFile() failed to open " + uri);
+                promise.reject("E_INVALID", e);
+                return;
+            }
+
+            int chunk = Math.max(MIN_FILE_CHUNK_SIZE, Math.min(MAX_FILE_CHUNK_SIZE, (int) chunkSize));
+            ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSendFile", () -> {
+                PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+                if (pco == null || pco.getPeerConnection() == null) {
+                    Log.d(TAG, "dataChannelSendFile() peerConnection is null");
+                    closeOnIoExecutor(inputStream);
+                    promise.reject(new Exception("PeerConnection not found"));
+                    return;
+                }
+
+                pco.dataChannelSendFile(reactTag, inputStream, size, chunk, promise);
+            });
+        });
+    }
+
+    /**
+     * Writes the next {@code size} bytes received in binary messages on a data
+     * channel to a file (a file path, or a file or content URI), instead of
+     * emitting them as messages. The promise is resolved with the number of
+     * bytes written once the file is complete.
+     */
+    @ReactMethod
+    public void dataChannelReceiveFile(
+            int peerConnectionId, String reactTag, String uri, double size, Promise promise) {
+        if (size <= 0) {
+            promise.reject(new Exception("Invalid file size"));
+            return;
+        }
+
+        // The file is opened on the I/O thread, content providers may be slow.
+        ThreadUtils.runOnIoExecutor("dataChannelOpenFile", () -> {
+            OutputStream outputStream;
+            try {
+                ContentResolver contentResolver = getReactApplicationContext().getContentResolver();
+                outputStream = contentResolver.openOutputStream(parseFileUri(uri), "w");
+                if (outputStream == null) {
+                    throw new FileNotFoundException(uri);
+                }
+            } catch (IOException | SecurityException e) {
+                Log.d(TAG, "dataChannelReceiveFile() failed to open " + uri);
+                promise.reject("E_INVALID", e);
+                return;
+            }
+
+            ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelReceiveFile", () -> {
+                PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+                if (pco == null || pco.getPeerConnection() == null) {
+                    Log.d(TAG, "dataChannelReceiveFile() peerConnection is null");
+                    closeOnIoExecutor(outputStream);
+                    promise.reject(new Exception("PeerConnection not found"));
+                    return;
+                }
+
+                pco.dataChannelReceiveFile(reactTag, outputStream, (long) size, promise);
+            });
+        });
+    }
+
+    private static void closeOnIoExecutor(Closeable closeable) {
+        ThreadUtils.runOnIoExecutor("dataChannelCloseFile", () -> {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing we can do about it.
+            }
+        });
+    }
+
+    /**
+     * Parses a URI, plain paths are considered file URIs.
+     */
+    private static Uri parseFileUri(String uri) {
+        Uri parsed = Uri.parse(uri);
+        return parsed.getScheme() == null ? Uri.fromFile(new File(uri)) : parsed;
+    }
+
+    @ReactMethod
+    public void dataChannelGetBufferPoolStats(int peerConnectionId, String reactTag, Promise promise) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelGetBufferPoolStats", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "dataChannelGetBufferPoolStats() peerConnection is null");
+                promise.reject(new Exception("PeerConnection not found"));
+                return;
+            }
+
+            WritableMap stats = pco.dataChannelGetBufferPoolStats(reactTag);
+            if (stats == null) {
+                promise.reject(new Exception("DataChannel not found"));
+                return;
+            }
+
+            promise.resolve(stats);
+        });
+    }
+
+    @ReactMethod
+    public void dataChannelSetBufferedAmountLowThreshold(int peerConnectionId, String reactTag, double threshold) {
+        ThreadUtils.runOnExecutor(peerConnectionId, "dataChannelSetBufferedAmountLowThreshold", () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "dataChannelSetBufferedAmountLowThreshold() peerConnection is null");
+                return;
+            }
+
+            pco.dataChannelSetBufferedAmountLowThreshold(reactTag, (long) threshold);
+        });
+    }
+
     @ReactMethod
     public void generateCertificate(ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor("generateCertificate", () -> {
             try {
                 PeerConnection.KeyType keyType = PeerConnection.KeyType.ECDSA;
                 long expires = 2592000L; // Default 30 days
@@ -1504,6 +1862,41 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return sb.toString();
     }
 
+    /**
+     * Enables or disables the executor queue-depth and task-latency metrics.
+     * While enabled, an {@code executorMetrics} event is emitted every
+     * {@code reportIntervalMs} (if positive) with the metrics collected since
+     * the previous event.
+     */
+    @ReactMethod
+    public void setExecutorMetricsEnabled(boolean enabled, int reportIntervalMs) {
+        ExecutorMetrics metrics = ThreadUtils.getMetrics();
+        metrics.setEnabled(enabled);
+
+        synchronized (this) {
+            if (executorMetricsReport != null) {
+                executorMetricsReport.cancel(false);
+                executorMetricsReport = null;
+            }
+
+            if (enabled && reportIntervalMs > 0) {
+                executorMetricsReport = ThreadUtils.getScheduler().scheduleAtFixedRate(() -> {
+                    sendEvent("executorMetrics", metrics.snapshot(/* reset */ true));
+                }, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @ReactMethod
+    public void getExecutorMetrics(boolean reset, Promise promise) {
+        promise.resolve(ThreadUtils.getMetrics().snapshot(reset));
+    }
+
+    @ReactMethod
+    public void getRendererPoolMetrics(boolean reset, Promise promise) {
+        promise.resolve(RendererPool.getInstance().getMetrics(reset));
+    }
+
     @ReactMethod
     public void addListener(String eventName) {
         // Keep: Required for RN built in Event Emitter Calls.
@@ -16,6 +16,18 @@ public class WebRTCModuleOptions {
     public Logging.Severity loggingSeverity;
     public String fieldTrials;
     public boolean enableMediaProjectionService;
+    public boolean enableExecutorMetrics;
+    public int executorMetricsReportIntervalMs;
+    public int eventBatchingWindowMs;
+    public int eventBatchingMaxEvents;
+    public int dataChannelBufferedAmountIntervalMs;
+    public boolean compactStatsEncoding;
+    public int videoTrackInitialMuteDelayMs;
+    public int videoTrackMuteDelayMs;
+    public int rendererPoolSize;
+    public boolean videoEffectsAsync;
+    public boolean adaptiveScreenCapture;
+    public int screenCaptureKeepAliveIntervalMs;
 
     public static WebRTCModuleOptions getInstance() {
         if (instance == null) {
@@ -4,16 +4,21 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.util.Log;
+import android.view.SurfaceView;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
+import androidx.annotation.Nullable;
 import androidx.core.view.ViewCompat;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.UiThreadUtil;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.uimanager.events.RCTEventEmitter;
 
@@ -23,12 +28,10 @@ import org.webrtc.MediaStream;
 import org.webrtc.RendererCommon;
 import org.webrtc.RendererCommon.RendererEvents;
 import org.webrtc.RendererCommon.ScalingType;
-import org.webrtc.SurfaceViewRenderer;
 import org.webrtc.VideoTrack;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.List;
 import java.util.Objects;
 
 public class WebRTCView extends ViewGroup {
@@ -52,28 +55,41 @@ public class WebRTCView extends ViewGroup {
     private static final String TAG = WebRTCModule.TAG;
 
     /**
-     * The number of instances for {@link SurfaceViewRenderer}, used for logging.
-     * When the renderer is initialized, it creates a new {@link javax.microedition.khronos.egl.EGLContext}
-     * which can throw an exception, probably due to memory limitations. We log the number of instances that can
-     * be created before the exception is thrown.
+     * The render budget tiers: views whose visible area (in square dp) is at most
+     * {@code RENDER_BUDGET_MAX_AREAS[i]} are rendered at most at
+     * {@code RENDER_BUDGET_FPS[i]} frames per second. Larger views are
+     * rendered at full rate and views which are not visible are paused.
      */
-    private static int surfaceViewRendererInstances;
+    private static final float[] RENDER_BUDGET_MAX_AREAS = { 160 * 120, 320 * 240 };
+    private static final float[] RENDER_BUDGET_FPS = { 10, 15 };
+
+    /**
+     * The value of {@link #renderBudgetFps} when frames are not dropped.
+     */
+    private static final float RENDER_BUDGET_FULL_RATE = -1;
+
+    /**
+     * The values of the {@code renderer} property: render into a
+     * {@link SurfaceView} (the default) or into a {@link android.view.TextureView}.
+     */
+    private static final String RENDERER_SURFACE = "surface";
+    private static final String RENDERER_TEXTURE = "texture";
 
     /**
      * The height of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #videoRenderer}.
      */
     private int frameHeight;
 
     /**
      * The rotation (degree) of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #videoRenderer}.
      */
     private int frameRotation;
 
     /**
      * The width of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #videoRenderer}.
      */
     private int frameWidth;
 
@@ -91,14 +107,14 @@ public class WebRTCView extends ViewGroup {
     private boolean mirror;
 
     /**
-     * Indicates if the {@link SurfaceViewRenderer} is attached to the video
+     * Indicates if {@link #videoRenderer} is attached to the video
      * track.
      */
     private boolean rendererAttached;
 
     /**
      * The {@code RendererEvents} which listens to rendering events reported by
-     * {@link #surfaceViewRenderer}.
+     * {@link #videoRenderer}.
      */
     private final RendererEvents rendererEvents = new RendererEvents() {
         @Override
@@ -114,14 +130,14 @@ public class WebRTCView extends ViewGroup {
 
     /**
      * The {@code Runnable} representation of
-     * {@link #requestSurfaceViewRendererLayout()}. Explicitly defined in order
+     * {@link #requestRendererLayout()}. Explicitly defined in order
      * to allow the use of the latter with {@link #post(Runnable)} without
      * initializing new instances on every (method) call.
      */
-    private final Runnable requestSurfaceViewRendererLayoutRunnable = new Runnable() {
+    private final Runnable requestRendererLayoutRunnable = new Runnable() {
         @Override
         public void run() {
-            requestSurfaceViewRendererLayout();
+            requestRendererLayout();
         }
     };
 
@@ -140,9 +156,18 @@ public class WebRTCView extends ViewGroup {
 
     /**
      * The {@link View} and {@link VideoSink} implementation which
-     * actually renders {@link #videoTrack} on behalf of this instance.
+     * actually renders {@link #videoTrack} on behalf of this instance. Only
+     * set while rendering is in progress: it is taken from (and given back to)
+     * the {@link RendererPool}.
+     */
+    @Nullable
+    private WebRTCViewRenderer videoRenderer;
+
+    /**
+     * The type of {@link #videoRenderer}: {@link #RENDERER_SURFACE} or
+     * {@link #RENDERER_TEXTURE}.
      */
-    private final SurfaceViewRenderer surfaceViewRenderer;
+    private String rendererType = RENDERER_SURFACE;
 
     /**
      * The {@code VideoTrack}, if any, rendered by this {@code WebRTCView}.
@@ -154,29 +179,77 @@ public class WebRTCView extends ViewGroup {
      */
     private boolean onDimensionsChangeEnabled = false;
 
+    /**
+     * The z-order last set with {@link #setZOrder(int)}, applied to every
+     * {@link #videoRenderer}.
+     */
+    private int zOrder;
+
+    /**
+     * Whether the frame rate of {@link #videoRenderer} is capped based
+     * on the on-screen size and visibility of this view.
+     */
+    private boolean renderBudgetEnabled;
+
+    /**
+     * The frame rate cap currently applied to {@link #videoRenderer}: 0
+     * if it is paused, or {@link #RENDER_BUDGET_FULL_RATE}.
+     */
+    private float renderBudgetFps = RENDER_BUDGET_FULL_RATE;
+
+    private final Rect visibleRect = new Rect();
+
+    /**
+     * Listens to the changes which may affect the visible area of this view.
+     */
+    private final ViewTreeObserver.OnScrollChangedListener renderBudgetScrollListener = this::updateRenderBudget;
+    private final ViewTreeObserver.OnGlobalLayoutListener renderBudgetLayoutListener = this::updateRenderBudget;
+
     public WebRTCView(Context context) {
         super(context);
 
-        surfaceViewRenderer = new SurfaceViewRenderer(context);
-        addView(surfaceViewRenderer);
-
         setMirror(false);
         setScalingType(DEFAULT_SCALING_TYPE);
     }
 
+    private static WebRTCViewRenderer createRenderer(Context context, String rendererType) {
+        return RENDERER_TEXTURE.equals(rendererType) ? new TextureViewRenderer(context)
+                                                     : new SurfaceViewRendererBackend(context);
+    }
+
+    /**
+     * "Cleans" {@link #videoRenderer} by setting the view part to opaque black
+     * and the surface part to transparent.
+     */
+    private void cleanRenderer() {
+        if (videoRenderer != null) {
+            setRendererBackgroundColor(Color.BLACK);
+            videoRenderer.clearImage();
+        }
+    }
+
     /**
-     * "Cleans" the {@code SurfaceViewRenderer} by setting the view part to
-     * opaque black and the surface part to transparent.
+     * Sets the background color of the view part of a {@link SurfaceView}
+     * renderer. A {@code TextureView} does not support backgrounds, it is
+     * opaque and shows black once cleared.
      */
-    private void cleanSurfaceViewRenderer() {
-        surfaceViewRenderer.setBackgroundColor(Color.BLACK);
-        surfaceViewRenderer.clearImage();
+    private void setRendererBackgroundColor(int color) {
+        if (videoRenderer == null) {
+            return;
+        }
+
+        View view = videoRenderer.getView();
+        if (view instanceof SurfaceView) {
+            view.setBackgroundColor(color);
+        }
     }
 
     /**
-     * Asynchronously retrieves the VideoTrack for the given streamURL.
-     * This method avoids blocking the UI thread by performing the lookup
-     * on the WebRTC executor thread and posting the result back to the UI thread.
+     * Retrieves the VideoTrack for the given streamURL. Known streams are
+     * looked up in the stream index right away, on the UI thread. Otherwise,
+     * the stream may still be being created, so it is looked up again on the
+     * WebRTC executor thread, after the pending work, and the result is posted
+     * back to the UI thread.
      *
      * @param streamURL The stream URL to lookup
      * @param callback Callback invoked on UI thread with the VideoTrack (or null if not found)
@@ -190,35 +263,26 @@ public class WebRTCView extends ViewGroup {
         ReactContext reactContext = (ReactContext) getContext();
         WebRTCModule module = reactContext.getNativeModule(WebRTCModule.class);
 
-        // Submit lookup to executor thread to avoid blocking UI thread
-        ThreadUtils.runOnExecutor(() -> {
-            try {
-                MediaStream stream = module.getStreamForReactTag(streamURL);
-                if (stream == null) {
-                    Log.w(TAG, "Stream not found for URL: " + streamURL);
-                    post(() -> callback.accept(null));
-                    return;
-                }
-
-                VideoTrack videoTrack = null;
-                List<VideoTrack> videoTracks = stream.videoTracks;
-                if (!videoTracks.isEmpty()) {
-                    videoTrack = videoTracks.get(0);
-                }
-
-                if (videoTrack == null) {
-                    Log.w(TAG, "No video stream for react tag: " + streamURL);
-                    post(() -> callback.accept(null));
-                    return;
-                }
+        VideoTrack videoTrack = module.getVideoTrackForReactTag(streamURL);
+        if (videoTrack != null) {
+            callback.accept(videoTrack);
+            return;
+        }
 
-                // Post result back to UI thread
-                final VideoTrack result = videoTrack;
-                post(() -> callback.accept(result));
-            } catch (Throwable tr) {
-                Log.e(TAG, "Error getting video track for stream URL: " + streamURL, tr);
+        ThreadUtils.runOnExecutor("getVideoTrackForStreamURL", () -> {
+            if (module.getStreamForReactTag(streamURL) == null) {
+                Log.w(TAG, "Stream not found for URL: " + streamURL);
                 post(() -> callback.accept(null));
+                return;
+            }
+
+            VideoTrack result = module.getVideoTrackForReactTag(streamURL);
+            if (result == null) {
+                Log.w(TAG, "No video stream for react tag: " + streamURL);
             }
+
+            // Post result back to UI thread
+            post(() -> callback.accept(result));
         });
     }
 
@@ -231,6 +295,9 @@ public class WebRTCView extends ViewGroup {
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
             tryAddRendererToVideoTrack();
+            if (renderBudgetEnabled) {
+                addRenderBudgetListeners();
+            }
         } finally {
             super.onAttachedToWindow();
         }
@@ -245,13 +312,113 @@ public class WebRTCView extends ViewGroup {
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
             removeRendererFromVideoTrack();
+            removeRenderBudgetListeners();
         } finally {
             super.onDetachedFromWindow();
         }
     }
 
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateRenderBudget();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateRenderBudget();
+    }
+
+    private void addRenderBudgetListeners() {
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnScrollChangedListener(renderBudgetScrollListener);
+        observer.addOnGlobalLayoutListener(renderBudgetLayoutListener);
+        updateRenderBudget();
+    }
+
+    private void removeRenderBudgetListeners() {
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.removeOnScrollChangedListener(renderBudgetScrollListener);
+        observer.removeOnGlobalLayoutListener(renderBudgetLayoutListener);
+    }
+
+    /**
+     * Computes the frame rate cap of this view from its visible area.
+     */
+    private float computeRenderBudgetFps() {
+        if (!renderBudgetEnabled) {
+            return RENDER_BUDGET_FULL_RATE;
+        }
+
+        if (getWindowVisibility() != VISIBLE || !isShown() || !getGlobalVisibleRect(visibleRect)) {
+            return 0;
+        }
+
+        float density = getResources().getDisplayMetrics().density;
+        float area = visibleRect.width() * visibleRect.height() / (density * density);
+        for (int i = 0; i < RENDER_BUDGET_MAX_AREAS.length; i++) {
+            if (area <= RENDER_BUDGET_MAX_AREAS[i]) {
+                return RENDER_BUDGET_FPS[i];
+            }
+        }
+
+        return RENDER_BUDGET_FULL_RATE;
+    }
+
+    /**
+     * Applies the frame rate cap of this view to {@link #videoRenderer},
+     * if it changed. Frames over the cap are dropped by the renderer before
+     * they are uploaded to the GPU.
+     */
+    private void updateRenderBudget() {
+        applyRenderBudget(computeRenderBudgetFps(), /* force */ false);
+    }
+
+    private void applyRenderBudget(float fps, boolean force) {
+        if (!force && fps == renderBudgetFps) {
+            return;
+        }
+        renderBudgetFps = fps;
+
+        if (videoRenderer == null) {
+            return;
+        }
+        if (fps == RENDER_BUDGET_FULL_RATE) {
+            videoRenderer.disableFpsReduction();
+        } else if (fps == 0) {
+            videoRenderer.pauseVideo();
+        } else {
+            videoRenderer.setFpsReduction(fps);
+        }
+    }
+
+    /**
+     * Sets whether the frame rate of this view is capped based on its
+     * on-screen size and visibility: small views are rendered at a reduced
+     * frame rate and views which are not visible (e.g. scrolled out of view)
+     * are not rendered at all.
+     *
+     * @param enabled Whether the render budget is enabled.
+     */
+    public void setRenderBudget(boolean enabled) {
+        if (renderBudgetEnabled == enabled) {
+            return;
+        }
+        renderBudgetEnabled = enabled;
+
+        if (ViewCompat.isAttachedToWindow(this)) {
+            if (enabled) {
+                addRenderBudgetListeners();
+            } else {
+                removeRenderBudgetListeners();
+                updateRenderBudget();
+            }
+        }
+    }
+
     /**
-     * Callback fired by {@link #surfaceViewRenderer} when the first frame is
+     * Callback fired by {@link #videoRenderer} when the first frame is
      * rendered. Here we will set the background of the view part of the
      * SurfaceView to transparent, so the surface (where video is actually
      * rendered) shines through.
@@ -259,12 +426,12 @@ public class WebRTCView extends ViewGroup {
     private void onFirstFrameRendered() {
         post(() -> {
             Log.d(TAG, "First frame rendered.");
-            surfaceViewRenderer.setBackgroundColor(Color.TRANSPARENT);
+            setRendererBackgroundColor(Color.TRANSPARENT);
         });
     }
 
     /**
-     * Callback fired by {@link #surfaceViewRenderer} when the resolution or
+     * Callback fired by {@link #videoRenderer} when the resolution or
      * rotation of the frame it renders has changed.
      *
      * @param videoWidth The new width of the rendered video frame.
@@ -290,8 +457,8 @@ public class WebRTCView extends ViewGroup {
         }
         if (changed) {
             // The onFrameResolutionChanged method call executes on the
-            // surfaceViewRenderer's render Thread.
-            post(requestSurfaceViewRendererLayoutRunnable);
+            // videoRenderer's render Thread.
+            post(requestRendererLayoutRunnable);
 
             // Call the onDimensionsChange callback if it's enabled
             if (onDimensionsChangeEnabled) {
@@ -335,7 +502,7 @@ public class WebRTCView extends ViewGroup {
 
             switch (scalingType) {
                 case SCALE_ASPECT_FILL:
-                    // Fill this ViewGroup with surfaceViewRenderer and the latter
+                    // Fill this ViewGroup with videoRenderer and the latter
                     // will take care of filling itself with the video similarly to
                     // the cover value the CSS property object-fit.
                     r = width;
@@ -345,9 +512,9 @@ public class WebRTCView extends ViewGroup {
                     break;
                 case SCALE_ASPECT_FIT:
                 default:
-                    // Lay surfaceViewRenderer out inside this ViewGroup in accord
+                    // Lay videoRenderer out inside this ViewGroup in accord
                     // with the contain value of the CSS property object-fit.
-                    // SurfaceViewRenderer will fill itself with the video similarly
+                    // videoRenderer will fill itself with the video similarly
                     // to the cover or contain value of the CSS property object-fit
                     // (which will not matter, eventually).
                     if (frameHeight == 0 || frameWidth == 0) {
@@ -366,7 +533,9 @@ public class WebRTCView extends ViewGroup {
                     break;
             }
         }
-        surfaceViewRenderer.layout(l, t, r, b);
+        if (videoRenderer != null) {
+            videoRenderer.getView().layout(l, t, r, b);
+        }
     }
 
     /**
@@ -375,43 +544,59 @@ public class WebRTCView extends ViewGroup {
      */
     private void removeRendererFromVideoTrack() {
         if (rendererAttached) {
+            WebRTCViewRenderer videoRenderer = this.videoRenderer;
+            String rendererType = this.rendererType;
+            VideoTrack videoTrack = this.videoTrack;
+
+            this.videoRenderer = null;
+            rendererAttached = false;
+
+            // The renderer keeps its EGL context and goes back to the pool, to
+            // be reused by the next view which starts rendering.
+            videoRenderer.setRendererEvents(null);
+            videoRenderer.clearImage();
+            removeView(videoRenderer.getView());
+
             if (videoTrack != null) {
-                ThreadUtils.runOnExecutor(() -> {
+                ThreadUtils.runOnExecutor("removeRendererFromVideoTrack", () -> {
                     try {
-                        videoTrack.removeSink(surfaceViewRenderer);
+                        videoTrack.removeSink(videoRenderer);
                     } catch (Throwable tr) {
                         // XXX If WebRTCModule#mediaStreamTrackRelease has already been
                         // invoked on videoTrack, then it is no longer safe to call removeSink
                         // on the instance, it will throw IllegalStateException.
                     }
+
+                    // Only reuse the renderer once it no longer receives frames.
+                    UiThreadUtil.runOnUiThread(() -> RendererPool.getInstance().release(videoRenderer, rendererType));
                 });
+            } else {
+                RendererPool.getInstance().release(videoRenderer, rendererType);
             }
 
-            surfaceViewRenderer.release();
-            surfaceViewRendererInstances--;
-            rendererAttached = false;
-
             // Since this WebRTCView is no longer rendering anything, make sure
-            // surfaceViewRenderer displays nothing as well.
+            // videoRenderer displays nothing as well.
             synchronized (layoutSyncRoot) {
                 frameHeight = 0;
                 frameRotation = 0;
                 frameWidth = 0;
             }
-            requestSurfaceViewRendererLayout();
+            requestRendererLayout();
         }
     }
 
     /**
-     * Request that {@link #surfaceViewRenderer} be laid out (as soon as
+     * Request that {@link #videoRenderer} be laid out (as soon as
      * possible) because layout-related state either of this instance or of
-     * {@code surfaceViewRenderer} has changed.
+     * {@code videoRenderer} has changed.
      */
     @SuppressLint("WrongCall")
-    private void requestSurfaceViewRendererLayout() {
-        // Google/WebRTC just call requestLayout() on surfaceViewRenderer when
+    private void requestRendererLayout() {
+        // Google/WebRTC just call requestLayout() on videoRenderer when
         // they change the value of its mirror or surfaceType property.
-        surfaceViewRenderer.requestLayout();
+        if (videoRenderer != null) {
+            videoRenderer.getView().requestLayout();
+        }
         // The above is not enough though when the video frame's dimensions or
         // rotation change. The following will suffice.
         if (!ViewCompat.isInLayout(this)) {
@@ -431,10 +616,12 @@ public class WebRTCView extends ViewGroup {
     public void setMirror(boolean mirror) {
         if (this.mirror != mirror) {
             this.mirror = mirror;
-            surfaceViewRenderer.setMirror(mirror);
-            // SurfaceViewRenderer takes the value of its mirror property into
+            if (videoRenderer != null) {
+                videoRenderer.setMirror(mirror);
+            }
+            // videoRenderer takes the value of its mirror property into
             // account upon its layout.
-            requestSurfaceViewRendererLayout();
+            requestRendererLayout();
         }
     }
 
@@ -461,11 +648,13 @@ public class WebRTCView extends ViewGroup {
                 return;
             }
             this.scalingType = scalingType;
-            surfaceViewRenderer.setScalingType(scalingType);
+            if (videoRenderer != null) {
+                videoRenderer.setScalingType(scalingType);
+            }
         }
-        // Both this instance ant its SurfaceViewRenderer take the value of
+        // Both this instance ant its videoRenderer take the value of
         // their scalingType properties into account upon their layouts.
-        requestSurfaceViewRendererLayout();
+        requestRendererLayout();
     }
 
     /**
@@ -520,7 +709,7 @@ public class WebRTCView extends ViewGroup {
                 if (videoTrack == null) {
                     // If we are not going to render any stream, clean the
                     // surface.
-                    cleanSurfaceViewRenderer();
+                    cleanRenderer();
                 }
                 removeRendererFromVideoTrack();
             }
@@ -532,7 +721,7 @@ public class WebRTCView extends ViewGroup {
                 if (oldVideoTrack == null) {
                     // If there was no old track, clean the surface so we start
                     // with black.
-                    cleanSurfaceViewRenderer();
+                    cleanRenderer();
                 }
             }
         }
@@ -547,46 +736,109 @@ public class WebRTCView extends ViewGroup {
      * @param zOrder The z-order to set on this {@code WebRTCView}.
      */
     public void setZOrder(int zOrder) {
+        this.zOrder = zOrder;
+        if (videoRenderer != null) {
+            applyZOrder(videoRenderer);
+        }
+    }
+
+    private void applyZOrder(WebRTCViewRenderer videoRenderer) {
+        // A TextureView is composited with the rest of the views, it has no
+        // z-order of its own.
+        View view = videoRenderer.getView();
+        if (!(view instanceof SurfaceView)) {
+            return;
+        }
+
+        SurfaceView surfaceView = (SurfaceView) view;
         switch (zOrder) {
             case 0:
-                surfaceViewRenderer.setZOrderMediaOverlay(false);
+                surfaceView.setZOrderMediaOverlay(false);
                 break;
             case 1:
-                surfaceViewRenderer.setZOrderMediaOverlay(true);
+                surfaceView.setZOrderMediaOverlay(true);
                 break;
             case 2:
-                surfaceViewRenderer.setZOrderOnTop(true);
+                surfaceView.setZOrderOnTop(true);
                 break;
         }
     }
 
+    /**
+     * Sets the type of view which renders the video of this
+     * {@code WebRTCView}. For more details, refer to the documentation of the
+     * {@code renderer} property of the JavaScript counterpart of
+     * {@code WebRTCView} i.e. {@code RTCView}.
+     *
+     * @param rendererType {@code "surface"} (the default) or
+     * {@code "texture"}.
+     */
+    public void setRendererType(String rendererType) {
+        if (!RENDERER_TEXTURE.equals(rendererType)) {
+            rendererType = RENDERER_SURFACE;
+        }
+        if (this.rendererType.equals(rendererType)) {
+            return;
+        }
+
+        // Give the old renderer back before the type changes, the video
+        // track is rendered into a renderer of the new type right away.
+        removeRendererFromVideoTrack();
+        this.rendererType = rendererType;
+        tryAddRendererToVideoTrack();
+    }
+
     /**
      * Starts rendering {@link #videoTrack} if rendering is not in progress and
      * all preconditions for the start of rendering are met.
      */
     private void tryAddRendererToVideoTrack() {
         if (!rendererAttached && videoTrack != null && ViewCompat.isAttachedToWindow(this)) {
-            EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+            RendererPool pool = RendererPool.getInstance();
+            WebRTCViewRenderer videoRenderer = pool.acquire(getContext(), rendererType);
+
+            if (videoRenderer != null) {
+                videoRenderer.setRendererEvents(rendererEvents);
+            } else {
+                EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+
+                if (sharedContext == null) {
+                    // If WebRTCViewRenderer#init() is invoked, it will throw a
+                    // RuntimeException which will very likely kill the application.
+                    Log.e(TAG, "Failed to render a VideoTrack!");
+                    return;
+                }
 
-            if (sharedContext == null) {
-                // If SurfaceViewRenderer#init() is invoked, it will throw a
-                // RuntimeException which will very likely kill the application.
-                Log.e(TAG, "Failed to render a VideoTrack!");
-                return;
+                videoRenderer = createRenderer(getContext(), rendererType);
+                try {
+                    videoRenderer.init(sharedContext, rendererEvents);
+                    pool.onRendererInitialized();
+                } catch (Exception e) {
+                    Logging.e(TAG,
+                            "Failed to initialize videoRenderer on instance " + pool.getRendererCount(), e);
+                    return;
+                }
             }
 
-            try {
-                surfaceViewRenderer.init(sharedContext, rendererEvents);
-                surfaceViewRendererInstances++;
-            } catch (Exception e) {
-                Logging.e(
-                        TAG, "Failed to initialize surfaceViewRenderer on instance " + surfaceViewRendererInstances, e);
-                return;
+            // The z-order of a SurfaceView must be set before it is attached
+            // to the window.
+            videoRenderer.setMirror(mirror);
+            synchronized (layoutSyncRoot) {
+                videoRenderer.setScalingType(scalingType);
             }
+            applyZOrder(videoRenderer);
+            addView(videoRenderer.getView());
+
+            this.videoRenderer = videoRenderer;
+            setRendererBackgroundColor(Color.BLACK);
+            applyRenderBudget(computeRenderBudgetFps(), /* force */ true);
+            requestRendererLayout();
 
-            ThreadUtils.runOnExecutor(() -> {
+            VideoTrack videoTrack = this.videoTrack;
+            WebRTCViewRenderer sink = videoRenderer;
+            ThreadUtils.runOnExecutor("tryAddRendererToVideoTrack", () -> {
                 try {
-                    videoTrack.addSink(surfaceViewRenderer);
+                    videoTrack.addSink(sink);
                 } catch (Throwable tr) {
                     // XXX If WebRTCModule#mediaStreamTrackRelease has already been
                     // invoked on videoTrack, then it is no longer safe to call addSink
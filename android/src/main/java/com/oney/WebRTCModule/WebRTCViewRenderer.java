@@ -0,0 +1,50 @@
+package com.oney.WebRTCModule;
+
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoSink;
+
+/**
+ * A renderer backend of {@link WebRTCView}: a {@link View} which renders the
+ * frames of the {@link org.webrtc.VideoTrack} it is added to as a sink. The
+ * methods follow the ones of {@link org.webrtc.SurfaceViewRenderer}.
+ */
+interface WebRTCViewRenderer extends VideoSink {
+    /**
+     * Initializes the renderer, it must be called before frames are rendered
+     * and may be called again after {@link #release()}.
+     */
+    void init(EglBase.Context sharedContext, RendererCommon.RendererEvents rendererEvents);
+
+    /**
+     * Sets the listener of the rendering events, e.g. when the renderer is
+     * reused by another view. The next frame is reported as the first one.
+     */
+    void setRendererEvents(@Nullable RendererCommon.RendererEvents rendererEvents);
+
+    /**
+     * Releases the EGL resources of the renderer.
+     */
+    void release();
+
+    void setMirror(boolean mirror);
+
+    void setScalingType(RendererCommon.ScalingType scalingType);
+
+    void clearImage();
+
+    void setFpsReduction(float fps);
+
+    void disableFpsReduction();
+
+    void pauseVideo();
+
+    /**
+     * Gets the {@link View} which displays the rendered frames.
+     */
+    View getView();
+}
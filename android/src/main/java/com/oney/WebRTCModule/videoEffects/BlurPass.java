@@ -0,0 +1,68 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.opengl.GLES20;
+
+import org.webrtc.GlShader;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One direction of a separable Gaussian blur. A full blur is made of a
+ * horizontal and a vertical pass, see {@link #create(float)}.
+ *
+ * The 9-tap kernel is sampled in 5 fetches thanks to linear filtering.
+ */
+public class BlurPass extends GlShaderPass {
+    private static final String FRAGMENT_SHADER = FRAGMENT_SHADER_HEADER
+            + "uniform vec2 step;\n"
+            + "void main() {\n"
+            + "  vec4 sum = texture2D(tex, tc) * 0.2270270270;\n"
+            + "  sum += texture2D(tex, tc + step * 1.3846153846) * 0.3162162162;\n"
+            + "  sum += texture2D(tex, tc - step * 1.3846153846) * 0.3162162162;\n"
+            + "  sum += texture2D(tex, tc + step * 3.2307692308) * 0.0702702703;\n"
+            + "  sum += texture2D(tex, tc - step * 3.2307692308) * 0.0702702703;\n"
+            + "  gl_FragColor = sum;\n"
+            + "}\n";
+
+    /**
+     * The offset of the outermost sample, in steps.
+     */
+    private static final float KERNEL_EXTENT = 3.2307692308f;
+
+    private final boolean horizontal;
+    private volatile float radius;
+
+    /**
+     * @param radius radius of the blur, in pixels of the frame
+     * @param horizontal whether the pass blurs horizontally or vertically
+     */
+    public BlurPass(float radius, boolean horizontal) {
+        super(horizontal ? "blurHorizontal" : "blurVertical", FRAGMENT_SHADER);
+        this.radius = radius;
+        this.horizontal = horizontal;
+    }
+
+    /**
+     * Creates the two passes of a blur of the given radius.
+     */
+    public static List<GlEffectPass> create(float radius) {
+        return Arrays.asList(new BlurPass(radius, true), new BlurPass(radius, false));
+    }
+
+    /**
+     * Sets the radius of the blur, in pixels of the frame. May be called on
+     * any thread.
+     */
+    public void setRadius(float radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    protected void setUniforms(GlShader shader, int width, int height) {
+        float step = radius / KERNEL_EXTENT;
+        GLES20.glUniform2f(shader.getUniformLocation("step"),
+                horizontal ? step / width : 0f,
+                horizontal ? 0f : step / height);
+    }
+}
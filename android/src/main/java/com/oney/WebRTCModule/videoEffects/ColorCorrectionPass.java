@@ -0,0 +1,62 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.opengl.GLES20;
+
+import org.webrtc.GlShader;
+
+/**
+ * Adjusts the brightness, contrast and saturation of the frame. The
+ * parameters may be changed on any thread, they apply from the next frame.
+ */
+public class ColorCorrectionPass extends GlShaderPass {
+    private static final String FRAGMENT_SHADER = FRAGMENT_SHADER_HEADER
+            + "uniform float brightness;\n"
+            + "uniform float contrast;\n"
+            + "uniform float saturation;\n"
+            + "void main() {\n"
+            + "  vec4 color = texture2D(tex, tc);\n"
+            + "  vec3 rgb = (color.rgb - 0.5) * contrast + 0.5 + brightness;\n"
+            + "  float luma = dot(rgb, vec3(0.299, 0.587, 0.114));\n"
+            + "  rgb = mix(vec3(luma), rgb, saturation);\n"
+            + "  gl_FragColor = vec4(clamp(rgb, 0.0, 1.0), color.a);\n"
+            + "}\n";
+
+    private volatile float brightness;
+    private volatile float contrast = 1f;
+    private volatile float saturation = 1f;
+
+    public ColorCorrectionPass() {
+        super("colorCorrection", FRAGMENT_SHADER);
+    }
+
+    /**
+     * @param brightness added to each channel, from -1 to 1, 0 leaves the frame unchanged
+     * @param contrast multiplier of the distance to mid-gray, 1 leaves the frame unchanged
+     * @param saturation 0 is grayscale, 1 leaves the frame unchanged
+     */
+    public ColorCorrectionPass(float brightness, float contrast, float saturation) {
+        this();
+        this.brightness = brightness;
+        this.contrast = contrast;
+        this.saturation = saturation;
+    }
+
+    public void setBrightness(float brightness) {
+        this.brightness = brightness;
+    }
+
+    public void setContrast(float contrast) {
+        this.contrast = contrast;
+    }
+
+    public void setSaturation(float saturation) {
+        this.saturation = saturation;
+    }
+
+    @Override
+    protected void setUniforms(GlShader shader, int width, int height) {
+        GLES20.glUniform1f(shader.getUniformLocation("brightness"), brightness);
+        GLES20.glUniform1f(shader.getUniformLocation("contrast"), contrast);
+        GLES20.glUniform1f(shader.getUniformLocation("saturation"), saturation);
+    }
+}
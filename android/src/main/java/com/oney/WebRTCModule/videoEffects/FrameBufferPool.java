@@ -0,0 +1,212 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.graphics.Matrix;
+import android.opengl.GLES20;
+import android.os.Handler;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.TextureBufferImpl;
+import org.webrtc.VideoFrame;
+import org.webrtc.YuvConverter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of output buffers for {@link VideoFrameProcessor}s, so that they do not allocate new I420
+ * planes or textures for every frame. Buffers are kept by resolution and go back to the pool when
+ * the frames using them are released.
+ *
+ * I420 buffers may be taken on any thread. Textures must be taken on the thread of the
+ * {@link SurfaceTextureHelper}, which holds the EGL context.
+ */
+public class FrameBufferPool {
+    /**
+     * The number of free buffers kept per resolution.
+     */
+    private static final int MAX_FREE_PER_SIZE = 3;
+
+    private final Handler handler;
+
+    /**
+     * The free I420 planes (Y, U and V in a single buffer), guarded by this instance.
+     */
+    private final Map<Long, ArrayDeque<ByteBuffer>> freeI420Buffers = new HashMap<>();
+    private long i420Hits;
+    private long i420Misses;
+
+    /**
+     * Only accessed on the GL thread, except for the counters which are guarded by this instance.
+     */
+    private final Map<Long, ArrayDeque<GlTextureFrameBuffer>> freeTextures = new HashMap<>();
+    private YuvConverter yuvConverter;
+    private int texturesInUse;
+    private long textureHits;
+    private long textureMisses;
+
+    private volatile boolean released;
+
+    public FrameBufferPool(SurfaceTextureHelper textureHelper) {
+        this.handler = textureHelper.getHandler();
+    }
+
+    private static long sizeKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    /**
+     * Takes an I420 buffer of the given size, with tightly packed planes. Its content is undefined.
+     */
+    public JavaI420Buffer acquireI420(int width, int height) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int sizeY = width * height;
+        int sizeUV = chromaWidth * chromaHeight;
+        long key = sizeKey(width, height);
+
+        ByteBuffer data;
+        synchronized (this) {
+            ArrayDeque<ByteBuffer> free = freeI420Buffers.get(key);
+            data = free != null ? free.poll() : null;
+            if (data != null) {
+                i420Hits++;
+            } else {
+                i420Misses++;
+            }
+        }
+        if (data == null) {
+            data = ByteBuffer.allocateDirect(sizeY + 2 * sizeUV);
+        }
+
+        ByteBuffer dataY = slice(data, 0, sizeY);
+        ByteBuffer dataU = slice(data, sizeY, sizeUV);
+        ByteBuffer dataV = slice(data, sizeY + sizeUV, sizeUV);
+        ByteBuffer pooledData = data;
+
+        return JavaI420Buffer.wrap(width, height, dataY, width, dataU, chromaWidth, dataV, chromaWidth,
+                () -> recycleI420(key, pooledData));
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int size) {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + size);
+        return buffer.slice();
+    }
+
+    private synchronized void recycleI420(long key, ByteBuffer data) {
+        if (released) {
+            return;
+        }
+
+        ArrayDeque<ByteBuffer> free = freeI420Buffers.get(key);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            freeI420Buffers.put(key, free);
+        }
+        if (free.size() < MAX_FREE_PER_SIZE) {
+            free.add(data);
+        }
+    }
+
+    /**
+     * Takes an RGBA texture, with its framebuffer, of the given size. Must be called on the GL
+     * thread. The texture is to be handed on with {@link #wrapFramebuffer(GlTextureFrameBuffer)}.
+     */
+    public GlTextureFrameBuffer acquireFramebuffer(int width, int height) {
+        ArrayDeque<GlTextureFrameBuffer> free = freeTextures.get(sizeKey(width, height));
+        GlTextureFrameBuffer framebuffer = free != null ? free.poll() : null;
+
+        synchronized (this) {
+            if (framebuffer != null) {
+                textureHits++;
+            } else {
+                textureMisses++;
+            }
+        }
+        if (framebuffer == null) {
+            framebuffer = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+            framebuffer.setSize(width, height);
+        }
+
+        texturesInUse++;
+        return framebuffer;
+    }
+
+    /**
+     * Wraps a texture taken from this pool into a buffer, which gives the texture back to the pool
+     * when it is released. Must be called on the GL thread.
+     */
+    public VideoFrame.TextureBuffer wrapFramebuffer(GlTextureFrameBuffer framebuffer) {
+        if (yuvConverter == null) {
+            yuvConverter = new YuvConverter();
+        }
+
+        return new TextureBufferImpl(framebuffer.getWidth(), framebuffer.getHeight(),
+                VideoFrame.TextureBuffer.Type.RGB, framebuffer.getTextureId(), new Matrix(), handler, yuvConverter,
+                () -> handler.post(() -> recycleFramebuffer(framebuffer)));
+    }
+
+    private void recycleFramebuffer(GlTextureFrameBuffer framebuffer) {
+        texturesInUse--;
+
+        long key = sizeKey(framebuffer.getWidth(), framebuffer.getHeight());
+        ArrayDeque<GlTextureFrameBuffer> free = freeTextures.get(key);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            freeTextures.put(key, free);
+        }
+
+        if (released || free.size() >= MAX_FREE_PER_SIZE) {
+            framebuffer.release();
+        } else {
+            free.add(framebuffer);
+        }
+
+        releaseConverterIfUnused();
+    }
+
+    private void releaseConverterIfUnused() {
+        // The buffers still in use may have to be converted to I420.
+        if (released && texturesInUse == 0 && yuvConverter != null) {
+            yuvConverter.release();
+            yuvConverter = null;
+        }
+    }
+
+    public synchronized WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("i420Hits", i420Hits);
+        stats.putDouble("i420Misses", i420Misses);
+        stats.putDouble("textureHits", textureHits);
+        stats.putDouble("textureMisses", textureMisses);
+        return stats;
+    }
+
+    /**
+     * Releases the free buffers. The buffers still in use are released when their frames are.
+     */
+    public void release() {
+        released = true;
+        synchronized (this) {
+            freeI420Buffers.clear();
+        }
+
+        handler.post(() -> {
+            for (ArrayDeque<GlTextureFrameBuffer> free : freeTextures.values()) {
+                for (GlTextureFrameBuffer framebuffer : free) {
+                    framebuffer.release();
+                }
+            }
+            freeTextures.clear();
+            releaseConverterIfUnused();
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells whether a frame differs from the previous one, so that the processing of unchanged frames
+ * (typically of a screen share) can be skipped. Frames are compared through small luma thumbnails,
+ * which are cheap to get for texture frames as well: only the thumbnail is read back from the GPU.
+ *
+ * A change smaller than a thumbnail pixel may be missed, so {@link #isDamaged(VideoFrame)} reports a
+ * frame at least every {@link #MAX_UNCHANGED_NS}.
+ *
+ * Not thread-safe, frames are expected to be passed in one at a time.
+ */
+public class FrameDamageDetector {
+    private static final int THUMBNAIL_WIDTH = 160;
+
+    /**
+     * The luma difference from which a thumbnail pixel is considered changed.
+     */
+    private static final int PIXEL_THRESHOLD = 4;
+
+    private static final long MAX_UNCHANGED_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private byte[] previous;
+    private byte[] current;
+    private int previousWidth;
+    private int previousHeight;
+    private int previousRotation;
+    private long lastDamageNs;
+
+    /**
+     * Compares the frame to the previous one passed in.
+     * @return whether the frame is to be processed: it changed, or it is the first one in
+     * {@link #MAX_UNCHANGED_NS}.
+     */
+    public boolean isDamaged(VideoFrame frame) {
+        boolean damaged = hasChanged(frame) || frame.getTimestampNs() - lastDamageNs >= MAX_UNCHANGED_NS;
+        if (damaged) {
+            lastDamageNs = frame.getTimestampNs();
+        }
+        return damaged;
+    }
+
+    /**
+     * Compares the frame to the previous one passed in, regardless of the time since the last change.
+     */
+    public boolean hasChanged(VideoFrame frame) {
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        int thumbnailWidth = Math.min(THUMBNAIL_WIDTH, width);
+        int thumbnailHeight = Math.max(1, (int) ((long) height * thumbnailWidth / width));
+
+        VideoFrame.Buffer scaled = buffer.cropAndScale(0, 0, width, height, thumbnailWidth, thumbnailHeight);
+        VideoFrame.I420Buffer i420 = scaled.toI420();
+        scaled.release();
+        if (i420 == null) {
+            previous = null;
+            return true;
+        }
+
+        int size = thumbnailWidth * thumbnailHeight;
+        if (current == null || current.length != size) {
+            current = new byte[size];
+        }
+        ByteBuffer dataY = i420.getDataY();
+        int strideY = i420.getStrideY();
+        for (int y = 0; y < thumbnailHeight; y++) {
+            dataY.position(y * strideY);
+            dataY.get(current, y * thumbnailWidth, thumbnailWidth);
+        }
+        i420.release();
+
+        boolean changed = previous == null
+                || previous.length != size
+                || width != previousWidth
+                || height != previousHeight
+                || frame.getRotation() != previousRotation
+                || differs(previous, current);
+
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+        previousWidth = width;
+        previousHeight = height;
+        previousRotation = frame.getRotation();
+
+        return changed;
+    }
+
+    private static boolean differs(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (Math.abs((a[i] & 0xFF) - (b[i] & 0xFF)) > PIXEL_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the previous frame, the next one is reported as changed.
+     */
+    public void reset() {
+        previous = null;
+    }
+}
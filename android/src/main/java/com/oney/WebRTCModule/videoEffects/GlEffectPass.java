@@ -0,0 +1,29 @@
+package com.oney.WebRTCModule.videoEffects;
+
+/**
+ * A GL pass of a {@link GlEffectsProcessor}: draws an RGBA texture, with an
+ * effect applied, into the currently bound framebuffer. Passes are chained
+ * texture-to-texture, frames are never converted to I420 between them.
+ *
+ * All the methods are called on the GL thread of the processor.
+ */
+public interface GlEffectPass {
+    /**
+     * The name of the pass, used for its timing.
+     */
+    String getName();
+
+    /**
+     * Draws the given texture into the currently bound framebuffer, the
+     * viewport of which is already set to the given size.
+     * @param inputTextureId GL_TEXTURE_2D texture with the output of the previous pass
+     * @param width width of the texture and of the viewport
+     * @param height height of the texture and of the viewport
+     */
+    void draw(int inputTextureId, int width, int height);
+
+    /**
+     * Releases the GL resources of the pass.
+     */
+    void release();
+}
@@ -0,0 +1,313 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.ThreadUtils;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoFrameDrawer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link VideoFrameProcessor} which applies a chain of {@link GlEffectPass}es
+ * on the GPU. The frame (usually an OES texture from the camera) is drawn
+ * into an RGBA texture, then each pass draws the output of the previous one
+ * into another texture. The result is handed on as a texture buffer, it is
+ * only converted to I420 if a consumer (e.g. a software encoder) needs it.
+ *
+ * The passes run on the thread of the {@link SurfaceTextureHelper}, which
+ * holds an EGL context shared with the consumers of the frames. The output
+ * textures are taken from the {@link FrameBufferPool} of the track.
+ *
+ * The GL resources are released on that thread, so {@link #release()} is to
+ * be called before the {@link SurfaceTextureHelper} is disposed. Past that,
+ * they can only be dropped, and are only freed along with the last EGL context
+ * sharing them.
+ */
+public class GlEffectsProcessor implements VideoFrameProcessor {
+    private static final String TAG = GlEffectsProcessor.class.getSimpleName();
+
+    private static final String INPUT_STAGE = "input";
+
+    private final List<GlEffectPass> passes;
+
+    /**
+     * Only accessed on the GL thread.
+     */
+    private Handler handler;
+    private GlRectDrawer drawer;
+    private VideoFrameDrawer frameDrawer;
+    private final GlTextureFrameBuffer[] scratchBuffers = new GlTextureFrameBuffer[2];
+
+    /**
+     * The pool of the output textures when the processor is used on its own,
+     * without the pool of a {@link VideoEffectProcessor}.
+     */
+    private FrameBufferPool ownBufferPool;
+    private SurfaceTextureHelper ownBufferPoolHelper;
+    private volatile boolean released;
+
+    /**
+     * Per-stage timing: the total time spent in each stage since timing was
+     * enabled (or reset), and the number of frames timed.
+     */
+    private volatile boolean timingEnabled;
+    private final long[] stageTotalNs;
+    private long timedFrames;
+
+    public GlEffectsProcessor(List<GlEffectPass> passes) {
+        this.passes = new ArrayList<>(passes);
+        this.stageTotalNs = new long[passes.size() + 1];
+    }
+
+    public GlEffectsProcessor(GlEffectPass... passes) {
+        this(Arrays.asList(passes));
+    }
+
+    @Override
+    public VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper) {
+        FrameBufferPool bufferPool;
+        synchronized (this) {
+            if (ownBufferPoolHelper != textureHelper) {
+                if (ownBufferPool != null) {
+                    ownBufferPool.release();
+                }
+                ownBufferPool = new FrameBufferPool(textureHelper);
+                ownBufferPoolHelper = textureHelper;
+            }
+            bufferPool = ownBufferPool;
+        }
+        return process(frame, textureHelper, bufferPool);
+    }
+
+    @Override
+    public VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper, FrameBufferPool bufferPool) {
+        Handler glHandler = textureHelper.getHandler();
+        if (Looper.myLooper() == glHandler.getLooper()) {
+            return processOnGlThread(frame, glHandler, bufferPool);
+        }
+
+        return ThreadUtils.invokeAtFrontUninterruptibly(
+                glHandler, () -> processOnGlThread(frame, glHandler, bufferPool));
+    }
+
+    private VideoFrame processOnGlThread(VideoFrame frame, Handler glHandler, FrameBufferPool bufferPool) {
+        if (released || passes.isEmpty()) {
+            frame.retain();
+            return frame;
+        }
+
+        if (handler != glHandler) {
+            // The processor is reused by another track (see ProcessorProvider).
+            // Programs and textures are shared by the capture contexts, but
+            // framebuffers are not: the scratch buffers have to be recreated.
+            if (handler != null) {
+                releaseScratchBuffers(handler);
+            }
+            handler = glHandler;
+        }
+
+        if (drawer == null) {
+            drawer = new GlRectDrawer();
+            frameDrawer = new VideoFrameDrawer();
+        }
+
+        boolean timing = timingEnabled;
+        long stageStartNs = timing ? System.nanoTime() : 0;
+
+        int width = frame.getBuffer().getWidth();
+        int height = frame.getBuffer().getHeight();
+
+        // Draw the frame unrotated, the rotation is kept in the output frame.
+        GlTextureFrameBuffer source = getScratchBuffer(0, width, height);
+        bindFramebuffer(source, width, height);
+        frameDrawer.drawFrame(new VideoFrame(frame.getBuffer(), 0, frame.getTimestampNs()),
+                drawer, /* additionalRenderMatrix */ null, 0, 0, width, height);
+        if (timing) {
+            stageStartNs = addStageTime(0, stageStartNs);
+        }
+
+        GlTextureFrameBuffer output = null;
+        for (int i = 0; i < passes.size(); i++) {
+            boolean last = i == passes.size() - 1;
+            GlTextureFrameBuffer target =
+                    last ? bufferPool.acquireFramebuffer(width, height) : getScratchBuffer((i + 1) % 2, width, height);
+
+            bindFramebuffer(target, width, height);
+            passes.get(i).draw(source.getTextureId(), width, height);
+            if (timing) {
+                stageStartNs = addStageTime(i + 1, stageStartNs);
+            }
+
+            source = target;
+            output = target;
+        }
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        // The output texture is read by other EGL contexts (renderers,
+        // encoders), make sure it is complete before it is handed on.
+        GLES20.glFinish();
+        if (timing) {
+            synchronized (stageTotalNs) {
+                timedFrames++;
+            }
+        }
+
+        // The output outlives this call, so it cannot be a scratch buffer.
+        VideoFrame.TextureBuffer buffer = bufferPool.wrapFramebuffer(output);
+
+        return new VideoFrame(buffer, frame.getRotation(), frame.getTimestampNs());
+    }
+
+    private static void bindFramebuffer(GlTextureFrameBuffer framebuffer, int width, int height) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer.getFrameBufferId());
+        GLES20.glViewport(0, 0, width, height);
+    }
+
+    private GlTextureFrameBuffer getScratchBuffer(int index, int width, int height) {
+        if (scratchBuffers[index] == null) {
+            scratchBuffers[index] = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+        }
+        scratchBuffers[index].setSize(width, height);
+        return scratchBuffers[index];
+    }
+
+    private void releaseScratchBuffers(Handler glHandler) {
+        GlTextureFrameBuffer[] buffers = scratchBuffers.clone();
+        Arrays.fill(scratchBuffers, null);
+        boolean posted = runOnGlThread(glHandler, () -> {
+            for (GlTextureFrameBuffer buffer : buffers) {
+                if (buffer != null) {
+                    buffer.release();
+                }
+            }
+        });
+        if (!posted) {
+            Log.w(TAG, "The previous GL thread is gone, its scratch buffers cannot be released");
+        }
+    }
+
+    /**
+     * Runs the runnable on the given GL thread, right away if it is the
+     * current thread.
+     *
+     * @return Whether the runnable was run or posted, it is not if the thread
+     * has quit (i.e. the {@link SurfaceTextureHelper} was disposed).
+     */
+    private static boolean runOnGlThread(Handler glHandler, Runnable runnable) {
+        if (Looper.myLooper() == glHandler.getLooper()) {
+            runnable.run();
+            return true;
+        }
+        return glHandler.post(runnable);
+    }
+
+    /**
+     * Adds the time since {@code stageStartNs} to the given stage, after
+     * waiting for the GPU to complete it.
+     *
+     * @return The start of the next stage.
+     */
+    private long addStageTime(int stage, long stageStartNs) {
+        GLES20.glFinish();
+        long nowNs = System.nanoTime();
+        synchronized (stageTotalNs) {
+            stageTotalNs[stage] += nowNs - stageStartNs;
+        }
+        return nowNs;
+    }
+
+    /**
+     * Enables or disables the timing of the stages. Since it waits for the GPU
+     * to complete each stage, it slows the processing down and is meant for
+     * diagnosis. Enabling it resets the timings.
+     */
+    public void setTimingEnabled(boolean enabled) {
+        if (enabled && !timingEnabled) {
+            resetStageTimings();
+        }
+        timingEnabled = enabled;
+    }
+
+    public void resetStageTimings() {
+        synchronized (stageTotalNs) {
+            Arrays.fill(stageTotalNs, 0);
+            timedFrames = 0;
+        }
+    }
+
+    /**
+     * Gets the average time (in ms) per frame of each stage: the drawing of
+     * the input frame ("input") then each pass, by name.
+     */
+    public Map<String, Double> getStageTimings() {
+        Map<String, Double> timings = new LinkedHashMap<>();
+        synchronized (stageTotalNs) {
+            for (int i = 0; i < stageTotalNs.length; i++) {
+                String name = i == 0 ? INPUT_STAGE : passes.get(i - 1).getName();
+                double averageMs = timedFrames == 0 ? 0 : stageTotalNs[i] / 1e6 / timedFrames;
+                timings.put(name, averageMs);
+            }
+        }
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * Releases the GL resources of the processor and of its passes. The
+     * output textures belong to the pool, they are released along with it.
+     * Must be called before the {@link SurfaceTextureHelper} of the last
+     * track which used the processor is disposed, otherwise the resources
+     * are dropped without being released.
+     */
+    @Override
+    public void release() {
+        synchronized (this) {
+            if (ownBufferPool != null) {
+                ownBufferPool.release();
+                ownBufferPool = null;
+                ownBufferPoolHelper = null;
+            }
+        }
+
+        Handler glHandler = handler;
+        if (glHandler == null) {
+            released = true;
+            return;
+        }
+
+        boolean posted = runOnGlThread(glHandler, () -> {
+            released = true;
+            for (GlEffectPass pass : passes) {
+                pass.release();
+            }
+            for (int i = 0; i < scratchBuffers.length; i++) {
+                if (scratchBuffers[i] != null) {
+                    scratchBuffers[i].release();
+                    scratchBuffers[i] = null;
+                }
+            }
+            drawer.release();
+            frameDrawer.release();
+        });
+        if (!posted) {
+            // The EGL context of the GL thread is gone, nothing can be released on it anymore.
+            Log.w(TAG, "Released after its GL thread quit, the GL resources are dropped");
+            released = true;
+            Arrays.fill(scratchBuffers, null);
+            drawer = null;
+            frameDrawer = null;
+        }
+    }
+}
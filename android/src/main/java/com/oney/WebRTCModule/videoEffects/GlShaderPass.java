@@ -0,0 +1,94 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.opengl.GLES20;
+
+import org.webrtc.GlShader;
+import org.webrtc.GlUtil;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A {@link GlEffectPass} implemented by a fragment shader, which is run over
+ * the whole frame. The shader samples the input texture through
+ * <tt>uniform sampler2D tex</tt> at the coordinates <tt>varying vec2 tc</tt>.
+ * Subclasses set their own uniforms in {@link #setUniforms(GlShader, int, int)}.
+ */
+public abstract class GlShaderPass implements GlEffectPass {
+    private static final String VERTEX_SHADER = "attribute vec4 in_pos;\n"
+            + "attribute vec4 in_tc;\n"
+            + "varying vec2 tc;\n"
+            + "void main() {\n"
+            + "  gl_Position = in_pos;\n"
+            + "  tc = in_tc.xy;\n"
+            + "}\n";
+
+    /**
+     * The header which fragment shaders start with.
+     */
+    protected static final String FRAGMENT_SHADER_HEADER = "precision mediump float;\n"
+            + "varying vec2 tc;\n"
+            + "uniform sampler2D tex;\n";
+
+    private static final FloatBuffer FULL_RECTANGLE_BUFFER = GlUtil.createFloatBuffer(new float[] {
+            -1.0f, -1.0f, // Bottom left.
+            1.0f, -1.0f, // Bottom right.
+            -1.0f, 1.0f, // Top left.
+            1.0f, 1.0f, // Top right.
+    });
+
+    private static final FloatBuffer FULL_RECTANGLE_TEXTURE_BUFFER = GlUtil.createFloatBuffer(new float[] {
+            0.0f, 0.0f, // Bottom left.
+            1.0f, 0.0f, // Bottom right.
+            0.0f, 1.0f, // Top left.
+            1.0f, 1.0f, // Top right.
+    });
+
+    private final String name;
+    private final String fragmentShader;
+    private GlShader shader;
+    private int texLocation;
+
+    protected GlShaderPass(String name, String fragmentShader) {
+        this.name = name;
+        this.fragmentShader = fragmentShader;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void draw(int inputTextureId, int width, int height) {
+        if (shader == null) {
+            shader = new GlShader(VERTEX_SHADER, fragmentShader);
+            texLocation = shader.getUniformLocation("tex");
+        }
+
+        shader.useProgram();
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, inputTextureId);
+        GLES20.glUniform1i(texLocation, 0);
+        setUniforms(shader, width, height);
+
+        shader.setVertexAttribArray("in_pos", 2, FULL_RECTANGLE_BUFFER);
+        shader.setVertexAttribArray("in_tc", 2, FULL_RECTANGLE_TEXTURE_BUFFER);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Sets the uniforms of the shader, other than the input texture, before
+     * it is drawn.
+     */
+    protected abstract void setUniforms(GlShader shader, int width, int height);
+
+    @Override
+    public void release() {
+        if (shader != null) {
+            shader.release();
+            shader = null;
+        }
+    }
+}
@@ -1,36 +1,200 @@
 package com.oney.WebRTCModule.videoEffects;
 
-import java.util.HashMap;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Manages VideoFrameProcessorFactoryInterfaces corresponding to name using hashmap, and provides
- * get, add and remove functionality.
+ * Manages VideoFrameProcessorFactoryInterfaces corresponding to name, and provides get, add and
+ * remove functionality. It is safe to use from any thread.
+ *
+ * Processors are expensive to build (e.g. they may load an ML model), so the instances taken with
+ * {@link #acquireProcessor(String)} are cached: when given back with
+ * {@link #releaseProcessor(VideoFrameProcessor)}, they are kept for the next track instead of
+ * being released. An instance is used by a single track at a time. One instance of each processor
+ * is built in the background when it is added, so that the first track does not wait for it.
  */
 public class ProcessorProvider {
-    private static Map<String, VideoFrameProcessorFactoryInterface> methodMap =
-            new HashMap<String, VideoFrameProcessorFactoryInterface>();
+    private static final String TAG = ProcessorProvider.class.getCanonicalName();
+
+    /**
+     * The number of idle instances kept per name.
+     */
+    private static final int MAX_IDLE_INSTANCES = 2;
+
+    private static final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * The registration each acquired instance comes from.
+     */
+    private static final Map<VideoFrameProcessor, Registration> leases =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private static final ExecutorService warmUpExecutor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "ProcessorWarmUpThread"));
+
+    /**
+     * A factory added under a name, with its idle instances. Replacing or removing the factory
+     * retires the registration: its idle instances are released, and so are the instances in
+     * use once they are given back.
+     */
+    private static class Registration {
+        final String name;
+        final VideoFrameProcessorFactoryInterface factory;
+
+        /**
+         * Guarded by this instance.
+         */
+        final ArrayDeque<VideoFrameProcessor> idle = new ArrayDeque<>();
+        int inUse;
+        boolean retired;
+
+        Registration(String name, VideoFrameProcessorFactoryInterface factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        void warmUp() {
+            synchronized (this) {
+                if (retired || !idle.isEmpty()) {
+                    return;
+                }
+            }
 
+            VideoFrameProcessor processor;
+            try {
+                processor = factory.build();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to build the processor " + name, e);
+                return;
+            }
+            if (processor != null) {
+                recycle(processor);
+            }
+        }
+
+        void recycle(VideoFrameProcessor processor) {
+            synchronized (this) {
+                if (!retired && idle.size() < MAX_IDLE_INSTANCES) {
+                    idle.add(processor);
+                    return;
+                }
+            }
+            processor.release();
+        }
+
+        void retire() {
+            ArrayDeque<VideoFrameProcessor> released;
+            synchronized (this) {
+                retired = true;
+                released = new ArrayDeque<>(idle);
+                idle.clear();
+            }
+            for (VideoFrameProcessor processor : released) {
+                processor.release();
+            }
+        }
+    }
+
+    /**
+     * Builds a new instance of the processor with the given name, which the caller owns.
+     */
     public static VideoFrameProcessor getProcessor(String name) {
-        if (methodMap.containsKey(name)) {
-            return methodMap.get(name).build();
-        } else {
+        Registration registration = name != null ? registrations.get(name) : null;
+        return registration != null ? registration.factory.build() : null;
+    }
+
+    /**
+     * Takes an instance of the processor with the given name: a cached one if any is idle,
+     * otherwise a new one. It must be given back with {@link #releaseProcessor(VideoFrameProcessor)}.
+     * @return the instance, or null if there is no processor with this name.
+     */
+    public static VideoFrameProcessor acquireProcessor(String name) {
+        Registration registration = name != null ? registrations.get(name) : null;
+        if (registration == null) {
             return null;
         }
+
+        VideoFrameProcessor processor;
+        synchronized (registration) {
+            processor = registration.idle.poll();
+            registration.inUse++;
+        }
+        if (processor == null) {
+            processor = registration.factory.build();
+        }
+
+        if (processor == null) {
+            synchronized (registration) {
+                registration.inUse--;
+            }
+            return null;
+        }
+
+        leases.put(processor, registration);
+        return processor;
+    }
+
+    /**
+     * Gives back an instance taken with {@link #acquireProcessor(String)}. It is kept for reuse,
+     * unless its factory has been replaced or removed since. Any other processor is released.
+     */
+    public static void releaseProcessor(VideoFrameProcessor processor) {
+        Registration registration = leases.remove(processor);
+        if (registration == null) {
+            processor.release();
+            return;
+        }
+
+        synchronized (registration) {
+            registration.inUse--;
+        }
+        registration.recycle(processor);
+    }
+
+    /**
+     * Gets the number of instances of the processor with the given name in use by tracks.
+     */
+    public static int getRefCount(String name) {
+        Registration registration = name != null ? registrations.get(name) : null;
+        if (registration == null) {
+            return 0;
+        }
+
+        synchronized (registration) {
+            return registration.inUse;
+        }
     }
 
+    /**
+     * Adds a processor under the given name, replacing the one with the same name, if any. An
+     * instance is built in the background. The tracks using the replaced processor keep it until
+     * their effects are set again.
+     */
     public static void addProcessor(
             String name, VideoFrameProcessorFactoryInterface videoFrameProcessorFactoryInterface) {
         if (name != null && videoFrameProcessorFactoryInterface != null) {
-            methodMap.put(name, videoFrameProcessorFactoryInterface);
+            Registration registration = new Registration(name, videoFrameProcessorFactoryInterface);
+            Registration previous = registrations.put(name, registration);
+            if (previous != null) {
+                previous.retire();
+            }
+            warmUpExecutor.execute(registration::warmUp);
         } else {
             throw new NullPointerException("Name or VideoFrameProcessorFactry can not be null");
         }
     }
 
     public static void removeProcessor(String name) {
-        if (name != null && methodMap.containsKey(name)) {
-            methodMap.remove(name);
+        Registration registration = name != null ? registrations.remove(name) : null;
+        if (registration != null) {
+            registration.retire();
         } else {
             throw new RuntimeException("VideoFrameProcessorFactry with " + name + " does not exist");
         }
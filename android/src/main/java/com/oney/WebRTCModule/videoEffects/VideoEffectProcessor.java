@@ -1,24 +1,157 @@
 package com.oney.WebRTCModule.videoEffects;
 
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
 import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoFrame;
 import org.webrtc.VideoProcessor;
 import org.webrtc.VideoSink;
 
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Lightweight abstraction for an object that can receive video frames, process and add effects in
  * them, and pass them on to another object.
+ *
+ * By default the processors run on the capture thread, one after the other. In async mode, they run
+ * on a worker thread instead, so a slow processor does not hold the capture back: the worker always
+ * takes the latest captured frame, and a frame which is replaced by a newer one before the worker
+ * gets to it is dropped.
+ *
+ * The processors can be replaced with {@link #setProcessors(List)} while frames are flowing, the
+ * new chain applies from the next frame. The replaced processors are given back to the
+ * {@link ProcessorProvider} once the frame in progress is done with them.
+ *
+ * With damage detection enabled (e.g. for screen sharing), the frames which did not change are not
+ * processed again: the output of the last processed frame is sent instead, so that the processing
+ * cost follows the screen activity rather than the frame rate. The detector may miss a small change,
+ * and screen capturers stop delivering frames when the screen is static, so the last skipped frame
+ * is held (see {@link VideoFrameCopier#hold(VideoFrame)}, it is only copied if needed) and processed
+ * once no frame came for {@link #QUIET_DELAY_MS}.
  */
 public class VideoEffectProcessor implements VideoProcessor {
-    private VideoSink mSink;
+    private static final long QUIET_DELAY_MS = 200;
+
+    private volatile VideoSink mSink;
     final private SurfaceTextureHelper textureHelper;
-    final private List<VideoFrameProcessor> videoFrameProcessors;
+    final private FrameBufferPool bufferPool;
+
+    /**
+     * The worker of the async mode, {@code null} in sync mode.
+     */
+    final private ScheduledExecutorService worker;
+
+    /**
+     * The latest frame waiting for the worker, guarded by {@link #lock}.
+     */
+    private final Object lock = new Object();
+    private VideoFrame pendingFrame;
+    private boolean workerScheduled;
+    private boolean released;
+
+    /**
+     * The chain in use, only replaced on the thread which runs the processors, and the one to use
+     * from the next frame, if any. Guarded by {@link #lock}.
+     */
+    private Chain chain;
+    private Chain nextChain;
+
+    /**
+     * The damage detector, if enabled, and the buffer of the last processed frame, which is sent again
+     * for unchanged frames. Only used on the thread which runs the processors.
+     */
+    private volatile FrameDamageDetector damageDetector;
+    private VideoFrame.Buffer lastOutputBuffer;
+
+    /**
+     * Holds the last skipped frame, to be processed if no frame follows it, and copies the frames
+     * handed to the worker. The time the last frame was received is only used on the thread which
+     * runs the processors.
+     */
+    final private VideoFrameCopier frameCopier;
+    private long lastFrameNs;
+    private boolean quietCheckScheduled;
+
+    /**
+     * Counters, guarded by {@link #lock}.
+     */
+    private long framesCaptured;
+    private long framesProcessed;
+    private long framesDropped;
+    private long framesSkipped;
+
+    /**
+     * A list of processors, with their latencies which are guarded by {@link #lock}.
+     */
+    private static class Chain {
+        final List<VideoFrameProcessor> processors;
+        final long[] totalNs;
+        final long[] maxNs;
+        final long[] calls;
+
+        Chain(List<VideoFrameProcessor> processors) {
+            this.processors = processors;
+            this.totalNs = new long[processors.size()];
+            this.maxNs = new long[processors.size()];
+            this.calls = new long[processors.size()];
+        }
+
+        void release() {
+            for (VideoFrameProcessor processor : processors) {
+                ProcessorProvider.releaseProcessor(processor);
+            }
+        }
+    }
 
     public VideoEffectProcessor(List<VideoFrameProcessor> processors, SurfaceTextureHelper textureHelper) {
+        this(processors, textureHelper, false);
+    }
+
+    /**
+     * @param async whether the processors run on a worker thread rather than on the capture thread
+     */
+    public VideoEffectProcessor(
+            List<VideoFrameProcessor> processors, SurfaceTextureHelper textureHelper, boolean async) {
         this.textureHelper = textureHelper;
-        this.videoFrameProcessors = processors;
+        this.chain = new Chain(processors);
+        this.bufferPool = new FrameBufferPool(textureHelper);
+        this.frameCopier = new VideoFrameCopier(textureHelper);
+        this.worker = async
+                ? Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "VideoEffectsThread"))
+                : null;
+    }
+
+    /**
+     * Replaces the processors, from the next frame on. The source keeps this processor, so the
+     * capture goes on without interruption.
+     */
+    public void setProcessors(List<VideoFrameProcessor> processors) {
+        Chain unused;
+        synchronized (lock) {
+            if (released) {
+                unused = new Chain(processors);
+            } else {
+                unused = nextChain;
+                nextChain = new Chain(processors);
+            }
+        }
+
+        if (unused != null) {
+            unused.release();
+        }
+    }
+
+    /**
+     * Enables or disables the skipping of the frames which did not change.
+     */
+    public void setDamageDetectionEnabled(boolean enabled) {
+        damageDetector = enabled ? new FrameDamageDetector() : null;
     }
 
     @Override
@@ -40,20 +173,320 @@ public class VideoEffectProcessor implements VideoProcessor {
      */
     @Override
     public void onFrameCaptured(VideoFrame frame) {
+        if (worker == null) {
+            synchronized (lock) {
+                framesCaptured++;
+            }
+            deliver(process(frame, /* force */ false));
+            return;
+        }
+
+        synchronized (lock) {
+            framesCaptured++;
+            if (released) {
+                return;
+            }
+        }
+
+        // Texture frames hold the only texture of the SurfaceTextureHelper, the camera cannot deliver
+        // the next frame until it is released. Hand the worker a copy on the GPU instead, which the
+        // processors can use as a texture as well.
+        VideoFrame queuedFrame = frameCopier.copy(frame);
+
+        synchronized (lock) {
+            if (released) {
+                queuedFrame.release();
+                return;
+            }
+
+            // Latest frame wins: a frame the worker did not get to yet is late, drop it.
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                framesDropped++;
+            }
+            pendingFrame = queuedFrame;
+
+            if (!workerScheduled) {
+                workerScheduled = true;
+                worker.execute(this::drain);
+            }
+        }
+    }
+
+    /**
+     * Processes the pending frames on the worker, until there are none.
+     */
+    private void drain() {
+        while (true) {
+            VideoFrame frame;
+            synchronized (lock) {
+                frame = pendingFrame;
+                pendingFrame = null;
+                if (frame == null) {
+                    workerScheduled = false;
+                    return;
+                }
+            }
+
+            try {
+                deliver(process(frame, /* force */ false));
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Runs the frame through the processors.
+     * @param force whether to process the frame even if the damage detection says it did not change
+     * @return the processed frame, which the caller is responsible for releasing. If a processor
+     * fails (returns null), the frame is returned unprocessed.
+     */
+    private VideoFrame process(VideoFrame frame, boolean force) {
+        Chain current;
+        Chain replaced = null;
+        synchronized (lock) {
+            if (nextChain != null) {
+                replaced = chain;
+                chain = nextChain;
+                nextChain = null;
+            }
+            current = chain;
+        }
+        if (replaced != null) {
+            replaced.release();
+        }
+
         frame.retain();
-        VideoFrame outputFrame = frame;
-        for (VideoFrameProcessor processor : this.videoFrameProcessors) {
-            outputFrame = processor.process(outputFrame, textureHelper);
+        if (current == null) {
+            return frame;
+        }
 
-            if (outputFrame == null) {
-                mSink.onFrame(frame);
+        FrameDamageDetector detector = damageDetector;
+        if (detector != null && !force) {
+            if (replaced != null) {
+                detector.reset();
+            }
+            lastFrameNs = System.nanoTime();
+            if (!detector.isDamaged(frame) && lastOutputBuffer != null) {
+                synchronized (lock) {
+                    framesSkipped++;
+                }
+                holdSkippedFrame(frame);
                 frame.release();
+                lastOutputBuffer.retain();
+                return new VideoFrame(lastOutputBuffer, frame.getRotation(), frame.getTimestampNs());
+            }
+        }
+        frameCopier.clearHeldFrame();
+
+        VideoFrame outputFrame = processChain(current, frame);
+        setLastOutputBuffer(detector != null ? outputFrame.getBuffer() : null, frame.getBuffer());
+        return outputFrame;
+    }
+
+    /**
+     * Runs the frame, which the caller retained, through the processors of the chain.
+     */
+    private VideoFrame processChain(Chain current, VideoFrame frame) {
+        VideoFrame outputFrame = frame;
+
+        for (int i = 0; i < current.processors.size(); i++) {
+            long startNs = System.nanoTime();
+            VideoFrame processedFrame =
+                    current.processors.get(i).process(outputFrame, textureHelper, bufferPool);
+            addLatency(current, i, System.nanoTime() - startNs);
+
+            // Intermediate frames are owned by this chain, releasing them gives their buffers back
+            // to the pool.
+            outputFrame.release();
+
+            if (processedFrame == null) {
+                frame.retain();
+                return frame;
+            }
+            outputFrame = processedFrame;
+        }
+
+        return outputFrame;
+    }
+
+    /**
+     * Keeps the buffer of the last processed frame for damage detection, unless it is (or holds) the
+     * capture texture, which the capturer needs back to deliver the next frame.
+     */
+    private void setLastOutputBuffer(VideoFrame.Buffer buffer, VideoFrame.Buffer inputBuffer) {
+        if (lastOutputBuffer != null) {
+            lastOutputBuffer.release();
+            lastOutputBuffer = null;
+        }
+
+        boolean captureTexture = buffer instanceof VideoFrame.TextureBuffer
+                && ((VideoFrame.TextureBuffer) buffer).getType() == VideoFrame.TextureBuffer.Type.OES;
+        if (buffer != null && buffer != inputBuffer && !captureTexture) {
+            buffer.retain();
+            lastOutputBuffer = buffer;
+        }
+    }
+
+    /**
+     * Holds a skipped frame, and makes sure it is processed if the capture goes quiet. It is only
+     * copied then, if it is a capture texture frame: in async mode, the worker gets copies already.
+     */
+    private void holdSkippedFrame(VideoFrame frame) {
+        frameCopier.hold(frame);
+
+        if (!quietCheckScheduled) {
+            quietCheckScheduled = true;
+            scheduleOnProcessingThread(this::checkQuiet, QUIET_DELAY_MS);
+        }
+    }
+
+    /**
+     * Processes the last skipped frame if no frame came since {@link #QUIET_DELAY_MS}: it may hold
+     * a change the damage detection missed, which would otherwise stay unsent.
+     */
+    private void checkQuiet() {
+        quietCheckScheduled = false;
+        synchronized (lock) {
+            if (released) {
                 return;
             }
         }
+        if (!frameCopier.hasHeldFrame()) {
+            return;
+        }
+
+        long quietMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastFrameNs);
+        if (quietMs < QUIET_DELAY_MS) {
+            quietCheckScheduled = true;
+            scheduleOnProcessingThread(this::checkQuiet, QUIET_DELAY_MS - quietMs);
+            return;
+        }
 
-        mSink.onFrame(outputFrame);
-        outputFrame.release();
+        VideoFrame skippedFrame = frameCopier.takeHeldFrame();
+        if (skippedFrame == null) {
+            return;
+        }
+
+        // The frame is sent later than it was captured, its timestamp has to follow the ones sent.
+        long timestampNs = skippedFrame.getTimestampNs() + (System.nanoTime() - lastFrameNs);
+        skippedFrame.getBuffer().retain();
+        VideoFrame frame = new VideoFrame(skippedFrame.getBuffer(), skippedFrame.getRotation(), timestampNs);
+        skippedFrame.release();
+
+        try {
+            deliver(process(frame, /* force */ true));
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void scheduleOnProcessingThread(Runnable runnable, long delayMs) {
+        if (worker == null) {
+            textureHelper.getHandler().postDelayed(runnable, delayMs);
+            return;
+        }
+
+        try {
+            worker.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Released.
+        }
+    }
+
+    private void deliver(VideoFrame frame) {
+        synchronized (lock) {
+            framesProcessed++;
+        }
+
+        VideoSink sink = mSink;
+        if (sink != null) {
+            sink.onFrame(frame);
+        }
         frame.release();
     }
+
+    private void addLatency(Chain chain, int index, long ns) {
+        synchronized (lock) {
+            chain.totalNs[index] += ns;
+            chain.maxNs[index] = Math.max(chain.maxNs[index], ns);
+            chain.calls[index]++;
+        }
+    }
+
+    /**
+     * Gets the frame counters and the latency of each processor (average and maximum, in ms) of
+     * the chain in use.
+     */
+    public WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        WritableArray processors = Arguments.createArray();
+
+        synchronized (lock) {
+            stats.putBoolean("async", worker != null);
+            stats.putDouble("framesCaptured", framesCaptured);
+            stats.putDouble("framesProcessed", framesProcessed);
+            stats.putDouble("framesDropped", framesDropped);
+            stats.putDouble("framesSkipped", framesSkipped);
+
+            for (int i = 0; chain != null && i < chain.processors.size(); i++) {
+                WritableMap processor = Arguments.createMap();
+                processor.putString("name", chain.processors.get(i).getClass().getSimpleName());
+                processor.putDouble("frames", chain.calls[i]);
+                double averageMs = chain.calls[i] == 0 ? 0 : chain.totalNs[i] / 1e6 / chain.calls[i];
+                processor.putDouble("averageMs", averageMs);
+                processor.putDouble("maxMs", chain.maxNs[i] / 1e6);
+                processors.pushMap(processor);
+            }
+        }
+
+        stats.putArray("processors", processors);
+        stats.putMap("bufferPool", bufferPool.getStats());
+        return stats;
+    }
+
+    /**
+     * Stops the worker of the async mode, drops the frame waiting for it, if any, gives the
+     * processors back to the {@link ProcessorProvider} and releases the free buffers of the pool.
+     */
+    public void release() {
+        synchronized (lock) {
+            released = true;
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                pendingFrame = null;
+            }
+        }
+
+        // The processors may be running, on the worker in async mode or on the capture thread
+        // otherwise: let them finish first.
+        Runnable releaseChains = () -> {
+            Chain current;
+            Chain next;
+            synchronized (lock) {
+                current = chain;
+                next = nextChain;
+                chain = null;
+                nextChain = null;
+            }
+            if (current != null) {
+                current.release();
+            }
+            if (next != null) {
+                next.release();
+            }
+            setLastOutputBuffer(null, null);
+            frameCopier.clearHeldFrame();
+        };
+        if (worker != null) {
+            worker.execute(releaseChains);
+            worker.shutdown();
+        } else if (!textureHelper.getHandler().post(releaseChains)) {
+            // The capture thread is gone, nothing runs the processors anymore.
+            releaseChains.run();
+        }
+        bufferPool.release();
+        frameCopier.release();
+    }
 }
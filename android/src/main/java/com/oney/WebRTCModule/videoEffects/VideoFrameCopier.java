@@ -0,0 +1,191 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.graphics.Matrix;
+import android.opengl.GLES20;
+import android.os.Handler;
+
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.TextureBufferImpl;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoFrameDrawer;
+
+/**
+ * Copies frames so that they can be kept without holding their source back.
+ * The capture texture of a {@link SurfaceTextureHelper} is only reused once
+ * the frame is released, so a capturer cannot deliver its next frame while a
+ * texture frame is kept: texture frames are copied on the GPU into a texture
+ * of a {@link FrameBufferPool}, without any readback.
+ *
+ * A frame which may only be needed later (e.g. if no frame follows it) can be
+ * held with {@link #hold(VideoFrame)} instead, which copies nothing: the
+ * capture texture keeps its image until the next frame is delivered, so it is
+ * only copied by {@link #takeHeldFrame()}, if it still holds that frame.
+ */
+public class VideoFrameCopier {
+    private final SurfaceTextureHelper textureHelper;
+    private final Handler handler;
+    private final FrameBufferPool bufferPool;
+
+    /**
+     * Only accessed on the GL thread.
+     */
+    private GlRectDrawer drawer;
+    private VideoFrameDrawer frameDrawer;
+
+    /**
+     * The held frame: either retained, or the capture texture which held it
+     * with the timestamp of its image. Only accessed on the thread which holds
+     * frames, the GL thread for capture texture frames.
+     */
+    private VideoFrame heldFrame;
+    private HeldTexture heldTexture;
+
+    private static final class HeldTexture {
+        final int width;
+        final int height;
+        final int textureId;
+        final Matrix transformMatrix;
+        final int rotation;
+        final long timestampNs;
+        final long textureTimestampNs;
+
+        HeldTexture(VideoFrame frame, VideoFrame.TextureBuffer buffer, long textureTimestampNs) {
+            this.width = buffer.getWidth();
+            this.height = buffer.getHeight();
+            this.textureId = buffer.getTextureId();
+            this.transformMatrix = new Matrix(buffer.getTransformMatrix());
+            this.rotation = frame.getRotation();
+            this.timestampNs = frame.getTimestampNs();
+            this.textureTimestampNs = textureTimestampNs;
+        }
+    }
+
+    public VideoFrameCopier(SurfaceTextureHelper textureHelper) {
+        this.textureHelper = textureHelper;
+        this.handler = textureHelper.getHandler();
+        this.bufferPool = new FrameBufferPool(textureHelper);
+    }
+
+    private static boolean isCaptureTexture(VideoFrame.Buffer buffer) {
+        return buffer instanceof VideoFrame.TextureBuffer
+                && ((VideoFrame.TextureBuffer) buffer).getType() == VideoFrame.TextureBuffer.Type.OES;
+    }
+
+    /**
+     * Holds the frame, in place of the one held before if any, without
+     * copying it. Capture texture frames must be passed on the thread of the
+     * {@link SurfaceTextureHelper}, while they are being delivered.
+     */
+    public void hold(VideoFrame frame) {
+        clearHeldFrame();
+
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        if (isCaptureTexture(buffer)) {
+            heldTexture = new HeldTexture(frame, (VideoFrame.TextureBuffer) buffer,
+                    textureHelper.getSurfaceTexture().getTimestamp());
+        } else {
+            buffer.retain();
+            heldFrame = new VideoFrame(buffer, frame.getRotation(), frame.getTimestampNs());
+        }
+    }
+
+    public boolean hasHeldFrame() {
+        return heldFrame != null || heldTexture != null;
+    }
+
+    /**
+     * Takes the held frame, copying it out of the capture texture if needed.
+     * Must be called on the thread of the {@link SurfaceTextureHelper} if the
+     * held frame is a capture texture frame.
+     * @return the frame, which the caller is responsible for releasing, or
+     * {@code null} if none is held or the capture texture was updated since.
+     */
+    public VideoFrame takeHeldFrame() {
+        VideoFrame frame = heldFrame;
+        HeldTexture texture = heldTexture;
+        heldFrame = null;
+        heldTexture = null;
+        if (frame != null || texture == null) {
+            return frame;
+        }
+
+        // The texture holds the image of the next frame once it was delivered.
+        if (textureHelper.getSurfaceTexture().getTimestamp() != texture.textureTimestampNs) {
+            return null;
+        }
+
+        VideoFrame.TextureBuffer buffer = new TextureBufferImpl(texture.width, texture.height,
+                VideoFrame.TextureBuffer.Type.OES, texture.textureId, texture.transformMatrix, handler,
+                /* yuvConverter */ null, /* releaseCallback */ null);
+        VideoFrame textureFrame = new VideoFrame(buffer, texture.rotation, texture.timestampNs);
+        try {
+            return copy(textureFrame);
+        } finally {
+            textureFrame.release();
+        }
+    }
+
+    /**
+     * Drops the held frame, if any.
+     */
+    public void clearHeldFrame() {
+        if (heldFrame != null) {
+            heldFrame.release();
+            heldFrame = null;
+        }
+        heldTexture = null;
+    }
+
+    /**
+     * Copies the frame, which the caller keeps ownership of. Texture frames
+     * must be passed on the thread of the {@link SurfaceTextureHelper}. Other
+     * buffers do not hold a capturer back, they are retained rather than
+     * copied.
+     * @return the copy, which the caller is responsible for releasing.
+     */
+    public VideoFrame copy(VideoFrame frame) {
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        if (!(buffer instanceof VideoFrame.TextureBuffer)) {
+            buffer.retain();
+            return new VideoFrame(buffer, frame.getRotation(), frame.getTimestampNs());
+        }
+
+        if (drawer == null) {
+            drawer = new GlRectDrawer();
+            frameDrawer = new VideoFrameDrawer();
+        }
+
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        GlTextureFrameBuffer framebuffer = bufferPool.acquireFramebuffer(width, height);
+
+        // Draw the frame unrotated, the rotation is kept in the copy.
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer.getFrameBufferId());
+        frameDrawer.drawFrame(new VideoFrame(buffer, 0, frame.getTimestampNs()),
+                drawer, /* additionalRenderMatrix */ null, 0, 0, width, height);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        // The copy may be read by other EGL contexts (e.g. encoders).
+        GLES20.glFinish();
+
+        return new VideoFrame(bufferPool.wrapFramebuffer(framebuffer), frame.getRotation(), frame.getTimestampNs());
+    }
+
+    /**
+     * Releases the GL resources. The copies still in use are released when
+     * they are.
+     */
+    public void release() {
+        bufferPool.release();
+        handler.post(() -> {
+            if (drawer != null) {
+                drawer.release();
+                frameDrawer.release();
+                drawer = null;
+                frameDrawer = null;
+            }
+        });
+    }
+}
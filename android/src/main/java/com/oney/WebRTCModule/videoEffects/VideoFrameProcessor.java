@@ -16,4 +16,20 @@ public interface VideoFrameProcessor {
      * @return processed videoframe which will rendered
      */
     public VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper);
+
+    /**
+     * Same as {@link #process(VideoFrame, SurfaceTextureHelper)}, with a pool from which the
+     * buffer of the processed frame can be taken instead of being allocated for every frame.
+     * Pooled buffers go back to the pool when the returned frame is released.
+     * @param bufferPool pool shared by the processors of the track
+     */
+    public default VideoFrame process(
+            VideoFrame frame, SurfaceTextureHelper textureHelper, FrameBufferPool bufferPool) {
+        return process(frame, textureHelper);
+    }
+
+    /**
+     * Releases the resources of the processor, once no track uses it anymore.
+     */
+    public default void release() {}
 }
@@ -0,0 +1,47 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DataChannelWrapperTest {
+    private static final long THRESHOLD = 64 * 1024;
+
+    /**
+     * JS counts every message sent, so with small messages which never fill
+     * the SCTP buffer up to the threshold its amount grows past it while the
+     * native one does not. The drains must still be reported, otherwise
+     * {@code bufferedamountlow} never fires and a sender waiting for it stalls.
+     */
+    @Test
+    public void reportsDrainsWhichNeverCrossTheThreshold() {
+        long jsAmount = 0;
+        for (int i = 0; i < 100; i++) {
+            // The message is counted by JS, then queued and sent natively before the next one.
+            jsAmount += 1024;
+            assertFalse(DataChannelWrapper.isDrainToThreshold(0, 1024, THRESHOLD));
+            if (DataChannelWrapper.isDrainToThreshold(1024, 0, THRESHOLD)) {
+                jsAmount = 0;
+            }
+        }
+        assertTrue(jsAmount <= THRESHOLD);
+    }
+
+    @Test
+    public void reportsDrainsAfterACrossing() {
+        assertTrue(DataChannelWrapper.isDrainToThreshold(THRESHOLD + 1, THRESHOLD, THRESHOLD));
+        assertTrue(DataChannelWrapper.isDrainToThreshold(THRESHOLD, 0, THRESHOLD));
+    }
+
+    @Test
+    public void reportsDrainsToZeroWithoutThreshold() {
+        assertTrue(DataChannelWrapper.isDrainToThreshold(1024, 0, 0));
+        assertFalse(DataChannelWrapper.isDrainToThreshold(2048, 1024, 0));
+    }
+
+    @Test
+    public void doesNotReportDropsAboveTheThreshold() {
+        assertFalse(DataChannelWrapper.isDrainToThreshold(THRESHOLD * 2, THRESHOLD + 1, THRESHOLD));
+    }
+}
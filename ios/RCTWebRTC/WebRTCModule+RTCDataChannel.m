@@ -83,7 +83,16 @@ RCT_EXPORT_METHOD(dataChannelSend : (nonnull NSNumber *)peerConnectionId reactTa
                               NSData *bytes = isBinary ? [[NSData alloc] initWithBase64EncodedString:data options:0]
                                                        : [data dataUsingEncoding:NSUTF8StringEncoding];
                               RTCDataBuffer *buffer = [[RTCDataBuffer alloc] initWithData:bytes isBinary:isBinary];
-                              [dcw.channel sendData:buffer];
+                              if (![dcw.channel sendData:buffer]) {
+                                  // JS already counted the message in the buffered amount, report the actual one.
+                                  uint64_t amount = dcw.channel.bufferedAmount;
+                                  NSDictionary *event = @{
+                                      @"reactTag" : dcw.reactTag,
+                                      @"peerConnectionId" : dcw.pcId,
+                                      @"bufferedAmount" : [NSNumber numberWithUnsignedLongLong:amount]
+                                  };
+                                  [self sendEventWithName:kEventDataChannelDidChangeBufferedAmount body:event];
+                              }
                           }
                       })
 
@@ -1,4 +1,4 @@
-import { NativeModules, NativeEventEmitter, EmitterSubscription } from 'react-native';
+import { NativeModules, NativeEventEmitter, EmitterSubscription, Platform } from 'react-native';
 // @ts-ignore
 import EventEmitter from 'react-native/Libraries/vendor/emitter/EventEmitter';
 
@@ -25,6 +25,14 @@ const NATIVE_EVENTS = [
     'mediaStreamTrackEnded',
 ];
 
+// Events which only the Android implementation emits.
+const ANDROID_NATIVE_EVENTS = [
+    'dataChannelFileTransferProgress',
+    'executorMetrics',
+    'peerConnectionStatsDelta',
+    'peerConnectionQosMetrics',
+];
+
 const eventEmitter = new EventEmitter();
 
 export function setupNativeEvents() {
@@ -33,6 +41,21 @@ export function setupNativeEvents() {
             eventEmitter.emit(eventName, ...args);
         });
     }
+
+    if (Platform.OS === 'android') {
+        for (const eventName of ANDROID_NATIVE_EVENTS) {
+            nativeEmitter.addListener(eventName, (...args) => {
+                eventEmitter.emit(eventName, ...args);
+            });
+        }
+
+        // High-rate events may be batched natively, unpack them in order.
+        nativeEmitter.addListener('eventBatch', (events: Array<{ eventName: string, data: unknown }>) => {
+            for (const { eventName, data } of events) {
+                eventEmitter.emit(eventName, data);
+            }
+        });
+    }
 }
 
 type EventHandler = (event: unknown) => void;
@@ -41,7 +64,7 @@ type Listener = unknown;
 const _subscriptions: Map<Listener, EmitterSubscription[]> = new Map();
 
 export function addListener(listener: Listener, eventName: string, eventHandler: EventHandler): void {
-    if (!NATIVE_EVENTS.includes(eventName)) {
+    if (!NATIVE_EVENTS.includes(eventName) && !ANDROID_NATIVE_EVENTS.includes(eventName)) {
         throw new Error(`Invalid event: ${eventName}`);
     }
 
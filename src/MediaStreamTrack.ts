@@ -1,4 +1,4 @@
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
 import { MediaTrackConstraints } from './Constraints';
 import { addListener, removeListener } from './EventEmitter';
@@ -167,6 +167,39 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         this._setVideoEffects([ name ]);
     }
 
+    /**
+     * Non-standard, Android only: gets the frame counters (captured, processed, dropped, skipped) and
+     * the latency of each processor of the video effects of this track, or null if it has none.
+     */
+    _getVideoEffectsStats(): object | null {
+        if (this.remote || this.kind !== 'video') {
+            throw new Error('Only implemented for local video tracks');
+        }
+
+        if (Platform.OS !== 'android') {
+            return null;
+        }
+
+        return WebRTCModule.mediaStreamTrackGetVideoEffectsStats(this.id);
+    }
+
+    /**
+     * Non-standard, Android only: gets the telemetry of the frames received on a remote video
+     * track (frame rate, resolution, rotation, inter-frame gap histogram and freezes). It is
+     * cheap enough to be polled, unlike getStats.
+     */
+    _getTelemetry(): object | null {
+        if (!this.remote || this.kind !== 'video') {
+            throw new Error('Only implemented for remote video tracks');
+        }
+
+        if (Platform.OS !== 'android') {
+            return null;
+        }
+
+        return WebRTCModule.mediaStreamTrackGetTelemetry(this._peerConnectionId, this.id);
+    }
+
     /**
      * Internal function which is used to set the muted state on remote tracks and
      * emit the mute / unmute event.
@@ -0,0 +1,50 @@
+import { requireNativeComponent, ViewProps } from 'react-native';
+
+export interface RTCCompositeViewTile {
+  /**
+   * The URL of the stream whose first video track is rendered in this tile.
+   */
+  streamURL: string;
+
+  /**
+   * The position and size of the tile, relative to the view.
+   */
+  x: number;
+  y: number;
+  width: number;
+  height: number;
+
+  /**
+   * Same as the objectFit prop of RTCView. Defaults to 'contain'.
+   */
+  objectFit?: 'contain' | 'cover';
+
+  /**
+   * Same as the mirror prop of RTCView. Defaults to false.
+   */
+  mirror?: boolean;
+}
+
+/**
+ * Native prop validation was removed from RN in:
+ * https://github.com/facebook/react-native/commit/8dc3ba0444c94d9bbb66295b5af885bff9b9cd34
+ *
+ * So we list them here for documentation purposes.
+ */
+export interface RTCCompositeViewProps extends ViewProps {
+  /**
+   * The tiles to render, in drawing order. All of them are rendered into a
+   * single surface, which uses far less resources than one RTCView per stream
+   * in large galleries.
+   *
+   * Tiles which keep their streamURL across updates keep rendering without
+   * interruption, so moving or resizing them is cheap.
+   *
+   * Android only.
+   *
+   * tiles: RTCCompositeViewTile[]
+   */
+  tiles: RTCCompositeViewTile[];
+}
+
+export default requireNativeComponent<RTCCompositeViewProps>('RTCVideoCompositeView');
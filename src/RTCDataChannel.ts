@@ -1,5 +1,5 @@
 import * as base64 from 'base64-js';
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
 import { addListener, removeListener } from './EventEmitter';
 import MessageEvent from './MessageEvent';
@@ -10,6 +10,36 @@ const { WebRTCModule } = NativeModules;
 
 type RTCDataChannelState = 'connecting' | 'open' | 'closing' | 'closed';
 
+type FileTransferOptions = {
+    // totalBytes is -1 if the size of the file being sent is not known.
+    onProgress?: (bytesTransferred: number, totalBytes: number) => void;
+};
+
+/**
+ * Computes the number of bytes the given string takes once UTF-8 encoded.
+ */
+function utf8ByteLength(str: string): number {
+    let length = 0;
+
+    for (let i = 0; i < str.length; i++) {
+        const code = str.charCodeAt(i);
+
+        if (code < 0x80) {
+            length += 1;
+        } else if (code < 0x800) {
+            length += 2;
+        } else if (code >= 0xd800 && code <= 0xdbff && i + 1 < str.length) {
+            // Surrogate pair, 4 bytes for both code units.
+            length += 4;
+            i++;
+        } else {
+            length += 3;
+        }
+    }
+
+    return length;
+}
+
 type DataChannelEventMap = {
     bufferedamountlow: RTCDataChannelEvent<'bufferedamountlow'>;
     close: RTCDataChannelEvent<'close'>;
@@ -23,6 +53,7 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
     _peerConnectionId: number;
     _reactTag: string;
     _bufferedAmount: number;
+    _bufferedAmountLowThreshold: number;
     _id: number;
     _label: string;
     _maxPacketLifeTime?: number;
@@ -33,7 +64,6 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
     _readyState: RTCDataChannelState;
 
     binaryType = 'arraybuffer'; // we only support 'arraybuffer'
-    bufferedAmountLowThreshold = 0;
 
     constructor(info) {
         super();
@@ -42,6 +72,7 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
         this._reactTag = info.reactTag;
 
         this._bufferedAmount = 0;
+        this._bufferedAmountLowThreshold = 0;
         this._label = info.label;
         this._id = info.id === -1 ? null : info.id; // null until negotiated.
         this._ordered = Boolean(info.ordered);
@@ -106,6 +137,20 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
         return this._bufferedAmount;
     }
 
+    get bufferedAmountLowThreshold(): number {
+        return this._bufferedAmountLowThreshold;
+    }
+
+    set bufferedAmountLowThreshold(value: number) {
+        this._bufferedAmountLowThreshold = value;
+
+        // On Android the threshold is tracked natively, so buffered amount changes are
+        // only reported when the amount drops to or below it.
+        if (Platform.OS === 'android') {
+            WebRTCModule.dataChannelSetBufferedAmountLowThreshold(this._peerConnectionId, this._reactTag, value);
+        }
+    }
+
     get label(): string {
         return this._label;
     }
@@ -142,24 +187,136 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
     send(data: ArrayBuffer): void;
     send(data: ArrayBufferView): void;
     send(data: string | ArrayBuffer | ArrayBufferView): void {
-        if (typeof data === 'string') {
-            WebRTCModule.dataChannelSend(this._peerConnectionId, this._reactTag, data, 'text');
+        const message = this._encodeMessage(data);
 
-            return;
+        this._bufferedAmount += message.byteLength;
+
+        WebRTCModule.dataChannelSend(this._peerConnectionId, this._reactTag, message.data, message.type);
+    }
+
+    /**
+     * Non-standard: sends several messages at once, in order, stopping once the buffered amount
+     * reaches maxBufferedAmount (if given). On Android they cross the bridge together.
+     *
+     * @returns The number of messages which were sent, the first ones in the given order.
+     */
+    async sendBatch(messages: Array<string | ArrayBuffer | ArrayBufferView>, maxBufferedAmount = 0): Promise<number> {
+        if (Platform.OS !== 'android') {
+            let sent = 0;
+
+            for (const data of messages) {
+                if (maxBufferedAmount > 0 && this.bufferedAmount >= maxBufferedAmount) {
+                    break;
+                }
+
+                this.send(data);
+                sent++;
+            }
+
+            return sent;
+        }
+
+        const encoded = messages.map(data => this._encodeMessage(data));
+
+        // Count the messages before they are sent, as send() does: the buffered amount events of
+        // the batch may come before the promise resolves.
+        for (const message of encoded) {
+            this._bufferedAmount += message.byteLength;
+        }
+
+        let sent = 0;
+
+        try {
+            sent = await WebRTCModule.dataChannelSendBatch(
+                this._peerConnectionId,
+                this._reactTag,
+                encoded.map(({ data, type }) => ({ data, type })),
+                maxBufferedAmount);
+        } finally {
+            // Uncount the messages which were not sent (all of them if the batch failed).
+            let unsent = 0;
+
+            for (let i = sent; i < encoded.length; i++) {
+                unsent += encoded[i].byteLength;
+            }
+
+            this._bufferedAmount = Math.max(0, this._bufferedAmount - unsent);
+        }
+
+        return sent;
+    }
+
+    /**
+     * Non-standard, Android only: streams a local file (a path, or a file or content URI) on the
+     * channel in binary messages of chunkSize bytes (at most 16 KiB), without the data crossing the
+     * bridge. The receiver gets the raw file contents, the file size is to be communicated by the
+     * application.
+     *
+     * @returns The number of bytes which were sent.
+     */
+    sendFile(uri: string, options: FileTransferOptions & { chunkSize?: number } = {}): Promise<number> {
+        const { chunkSize = 16 * 1024, onProgress } = options;
+
+        return this._fileTransfer('send', onProgress, () =>
+            WebRTCModule.dataChannelSendFile(this._peerConnectionId, this._reactTag, uri, chunkSize));
+    }
+
+    /**
+     * Non-standard, Android only: writes the next size bytes received in binary messages to a file
+     * (a path, or a file or content URI). No message events are dispatched for them.
+     *
+     * @returns The number of bytes which were written.
+     */
+    receiveFile(uri: string, size: number, options: FileTransferOptions = {}): Promise<number> {
+        return this._fileTransfer('receive', options.onProgress, () =>
+            WebRTCModule.dataChannelReceiveFile(this._peerConnectionId, this._reactTag, uri, size));
+    }
+
+    async _fileTransfer(
+        direction: string,
+        onProgress: FileTransferOptions['onProgress'],
+        start: () => Promise<number>
+    ): Promise<number> {
+        if (Platform.OS !== 'android') {
+            throw new Error('File transfers are only supported on Android');
+        }
+
+        const listener = {};
+
+        if (onProgress) {
+            addListener(listener, 'dataChannelFileTransferProgress', (ev: any) => {
+                if (ev.reactTag !== this._reactTag || ev.direction !== direction) {
+                    return;
+                }
+
+                onProgress(ev.bytesTransferred, ev.totalBytes);
+            });
+        }
+
+        try {
+            return await start();
+        } finally {
+            removeListener(listener);
+        }
+    }
+
+    _encodeMessage(data: string | ArrayBuffer | ArrayBufferView): { data: string, type: string, byteLength: number } {
+        if (typeof data === 'string') {
+            return { data, type: 'text', byteLength: utf8ByteLength(data) };
         }
 
         // Safely convert the buffer object to an Uint8Array for base64-encoding
+        let bytes: Uint8Array;
+
         if (ArrayBuffer.isView(data)) {
-            data = new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+            bytes = new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
         } else if (data instanceof ArrayBuffer) {
-            data = new Uint8Array(data);
+            bytes = new Uint8Array(data);
         } else {
             throw new TypeError('Data must be either string, ArrayBuffer, or ArrayBufferView');
         }
 
-        const base64data = base64.fromByteArray(data as Uint8Array);
-
-        WebRTCModule.dataChannelSend(this._peerConnectionId, this._reactTag, base64data, 'binary');
+        return { data: base64.fromByteArray(bytes), type: 'binary', byteLength: bytes.byteLength };
     }
 
     close(): void {
@@ -215,9 +372,13 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
                 return;
             }
 
+            // The messages are counted here as soon as they are sent, so the threshold is crossed
+            // from the amount counted here, which the native one may never have reached.
+            const wasAbove = this._bufferedAmount > this._bufferedAmountLowThreshold;
+
             this._bufferedAmount = ev.bufferedAmount;
 
-            if (this._bufferedAmount < this.bufferedAmountLowThreshold) {
+            if (wasAbove && this._bufferedAmount <= this._bufferedAmountLowThreshold) {
                 this.dispatchEvent(new RTCDataChannelEvent('bufferedamountlow', { channel: this }));
             }
         });
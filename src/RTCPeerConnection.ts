@@ -1,4 +1,4 @@
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
 import { addListener, removeListener } from './EventEmitter';
 import Logger from './Logger';
@@ -18,7 +18,7 @@ import RTCRtpTransceiver from './RTCRtpTransceiver';
 import RTCSessionDescription, { RTCSessionDescriptionInit } from './RTCSessionDescription';
 import RTCTrackEvent from './RTCTrackEvent';
 import * as RTCUtil from './RTCUtil';
-import { RTCOfferOptions } from './RTCUtil';
+import { RTCOfferOptions, RTCStatsFilter } from './RTCUtil';
 import { Event, EventTarget, getEventAttributeValue, setEventAttributeValue } from './vendor/event-target-shim';
 
 const log = new Logger('pc');
@@ -76,6 +76,27 @@ type RTCPeerConnectionEventMap = {
     error: Event<'error'>
 }
 
+// Non-standard: QoS metrics derived natively on Android, over a window of stats samples.
+type RTCQosMetrics = {
+    samples: number;
+    inboundKbps: number;
+    outboundKbps: number;
+    lossPercent: number;
+    jitterMs: number;
+    jitterMsP95: number;
+    rttMs: number;
+    rttMsP95: number;
+    decodeMsPerFrame: number;
+    framesPerSecond: number;
+    freezeCount: number;
+};
+
+type RTCQosMonitorOptions = {
+    intervalMs?: number;
+    windowSize?: number;
+    onMetrics?: (metrics: RTCQosMetrics) => void;
+};
+
 let nextPeerConnectionId = 0;
 
 export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEventMap> {
@@ -90,6 +111,8 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
     _transceivers: { order: number, transceiver: RTCRtpTransceiver }[];
     _remoteStreams: Map<string, MediaStream>;
     _pendingTrackEvents: any[];
+    _unsubscribeStats: (() => void) | null = null;
+    _qosListener: object | null = null;
 
     static generateCertificate(
         keygenAlgorithm: string | {
@@ -628,11 +651,17 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         existingTransceiver._direction = existingTransceiver.direction === 'sendrecv' ? 'recvonly' : 'inactive';
     }
 
-    async getStats(selector?: MediaStreamTrack) {
+    /**
+     * Gets the stats report. The filter is non-standard: it restricts the stats (by type) and their
+     * members (by name) which are returned. On Android it is applied before the report is serialized.
+     */
+    async getStats(selector?: MediaStreamTrack, filter?: RTCStatsFilter) {
         log.debug(`${this._pcId} getStats`);
 
         if (!selector) {
-            const data = await WebRTCModule.peerConnectionGetStats(this._pcId);
+            const data = Platform.OS === 'android'
+                ? await WebRTCModule.peerConnectionGetStats(this._pcId, filter ?? null)
+                : await WebRTCModule.peerConnectionGetStats(this._pcId);
 
             /**
              * On both Android and iOS it is faster to construct a single
@@ -643,7 +672,7 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
              * Native bridge which is a bottleneck that tends to be visible in
              * the UI when there is congestion involving UI-related passing.
              */
-            return new Map(JSON.parse(data));
+            return RTCUtil.parseStatsReport(data, filter);
         } else {
             const senders = this.getSenders().filter(s => s.track === selector);
             const receivers = this.getReceivers().filter(r => r.track === selector);
@@ -656,11 +685,131 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             } else {
                 const sr = senders[0] || receivers[0];
 
-                return sr.getStats();
+                return sr.getStats(filter);
             }
         }
     }
 
+    /**
+     * Non-standard: calls the given callback with the stats report every intervalMs. On Android
+     * the stats are collected natively and only the changes cross the bridge, the callback is not
+     * called when nothing changed.
+     *
+     * @param filter - the stats types and member names to collect (the timestamp, type and id
+     * are always kept)
+     * @returns A function which cancels the subscription.
+     */
+    subscribeStats(
+        intervalMs: number,
+        callback: (report: Map<string, any>) => void,
+        filter?: RTCStatsFilter
+    ): () => void {
+        this._unsubscribeStats?.();
+
+        if (Platform.OS !== 'android') {
+            const interval = setInterval(async () => {
+                const report = await this.getStats(undefined, filter);
+
+                callback(report);
+            }, intervalMs);
+
+            this._unsubscribeStats = () => {
+                clearInterval(interval);
+                this._unsubscribeStats = null;
+            };
+
+            return this._unsubscribeStats;
+        }
+
+        const listener = {};
+        const report = new Map();
+
+        addListener(listener, 'peerConnectionStatsDelta', (ev: any) => {
+            if (ev.peerConnectionId !== this._pcId) {
+                return;
+            }
+
+            RTCUtil.applyStatsDelta(report, ev.delta);
+
+            // The report is updated in place, the callback may keep the one it gets.
+            callback(new Map(report));
+        });
+
+        WebRTCModule.peerConnectionSubscribeStats(this._pcId, intervalMs, filter ?? null);
+
+        const unsubscribe = () => {
+            if (this._unsubscribeStats !== unsubscribe) {
+                return;
+            }
+
+            removeListener(listener);
+            WebRTCModule.peerConnectionUnsubscribeStats(this._pcId);
+            this._unsubscribeStats = null;
+        };
+
+        this._unsubscribeStats = unsubscribe;
+
+        return unsubscribe;
+    }
+
+    /**
+     * Non-standard, Android only: starts deriving QoS metrics (bitrates, packet loss, jitter, RTT,
+     * decoding time, etc.) natively from stats sampled every intervalMs, over the last windowSize
+     * samples. They can then be read with getQosMetrics(), or received after each sample.
+     */
+    startQosMonitor(options: RTCQosMonitorOptions = {}): void {
+        if (Platform.OS !== 'android') {
+            throw new Error('QoS monitoring is only supported on Android');
+        }
+
+        const { intervalMs = 1000, windowSize = 10, onMetrics } = options;
+
+        this._stopQosListener();
+
+        if (onMetrics) {
+            const listener = {};
+
+            addListener(listener, 'peerConnectionQosMetrics', (ev: any) => {
+                if (ev.peerConnectionId !== this._pcId) {
+                    return;
+                }
+
+                onMetrics(ev);
+            });
+
+            this._qosListener = listener;
+        }
+
+        WebRTCModule.peerConnectionStartQosMonitor(this._pcId, intervalMs, windowSize, Boolean(onMetrics));
+    }
+
+    stopQosMonitor(): void {
+        if (Platform.OS !== 'android') {
+            return;
+        }
+
+        this._stopQosListener();
+        WebRTCModule.peerConnectionStopQosMonitor(this._pcId);
+    }
+
+    /**
+     * Non-standard, Android only: gets the current QoS metrics, or null if they are not monitored.
+     */
+    getQosMetrics(): RTCQosMetrics | null {
+        if (Platform.OS !== 'android') {
+            return null;
+        }
+
+        return WebRTCModule.peerConnectionGetQosMetrics(this._pcId);
+    }
+
+    _stopQosListener(): void {
+        if (this._qosListener) {
+            removeListener(this._qosListener);
+            this._qosListener = null;
+        }
+    }
+
     getTransceivers(): RTCRtpTransceiver[] {
         return this._transceivers.map(e => e.transceiver);
     }
@@ -722,6 +871,8 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
 
             if (ev.connectionState === 'closed') {
                 // This PeerConnection is done, clean up.
+                this._unsubscribeStats?.();
+                this._stopQosListener();
                 removeListener(this);
 
                 WebRTCModule.peerConnectionDispose(this._pcId);
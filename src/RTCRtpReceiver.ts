@@ -1,9 +1,10 @@
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
 import MediaStreamTrack from './MediaStreamTrack';
 import RTCRtpCapabilities from './RTCRtpCapabilities';
 import { RTCRtpParametersInit } from './RTCRtpParameters';
 import RTCRtpReceiveParameters from './RTCRtpReceiveParameters';
+import { RTCStatsFilter, parseStatsReport } from './RTCUtil';
 
 const { WebRTCModule } = NativeModules;
 
@@ -32,8 +33,15 @@ export default class RTCRtpReceiver {
         return WebRTCModule.receiverGetCapabilities(kind);
     }
 
-    getStats() {
-        return WebRTCModule.receiverGetStats(this._peerConnectionId, this._id).then(data =>
+    /**
+     * @param filter - Non-standard: the stats types and member names to return.
+     */
+    getStats(filter?: RTCStatsFilter) {
+        const stats = Platform.OS === 'android'
+            ? WebRTCModule.receiverGetStats(this._peerConnectionId, this._id, filter ?? null)
+            : WebRTCModule.receiverGetStats(this._peerConnectionId, this._id);
+
+        return stats.then(data =>
             /* On both Android and iOS it is faster to construct a single
             JSON string representing the Map of StatsReports and have it
             pass through the React Native bridge rather than the Map of
@@ -42,7 +50,7 @@ export default class RTCRtpReceiver {
             Native bridge which is a bottleneck that tends to be visible in
             the UI when there is congestion involving UI-related passing.
             */
-            new Map(JSON.parse(data))
+            parseStatsReport(data, filter)
         );
     }
 
@@ -1,8 +1,9 @@
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 
 import MediaStreamTrack from './MediaStreamTrack';
 import RTCRtpCapabilities from './RTCRtpCapabilities';
 import RTCRtpSendParameters, { RTCRtpSendParametersInit } from './RTCRtpSendParameters';
+import { RTCStatsFilter, parseStatsReport } from './RTCUtil';
 
 const { WebRTCModule } = NativeModules;
 
@@ -54,8 +55,15 @@ export default class RTCRtpSender {
         this._rtpParameters = new RTCRtpSendParameters(newParameters);
     }
 
-    getStats() {
-        return WebRTCModule.senderGetStats(this._peerConnectionId, this._id).then(data =>
+    /**
+     * @param filter - Non-standard: the stats types and member names to return.
+     */
+    getStats(filter?: RTCStatsFilter) {
+        const stats = Platform.OS === 'android'
+            ? WebRTCModule.senderGetStats(this._peerConnectionId, this._id, filter ?? null)
+            : WebRTCModule.senderGetStats(this._peerConnectionId, this._id);
+
+        return stats.then(data =>
             /* On both Android and iOS it is faster to construct a single
             JSON string representing the Map of StatsReports and have it
             pass through the React Native bridge rather than the Map of
@@ -64,7 +72,7 @@ export default class RTCRtpSender {
             Native bridge which is a bottleneck that tends to be visible in
             the UI when there is congestion involving UI-related passing.
             */
-            new Map(JSON.parse(data))
+            parseStatsReport(data, filter)
         );
     }
 
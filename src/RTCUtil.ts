@@ -1,3 +1,4 @@
+import { Platform } from 'react-native';
 
 const DEFAULT_AUDIO_CONSTRAINTS = {};
 
@@ -19,6 +20,12 @@ export type RTCOfferOptions  = {
     voiceActivityDetection?:boolean
 };
 
+// Non-standard: restricts the stats (by type) and their members (by name) which are collected.
+export type RTCStatsFilter = {
+    types?: string[];
+    members?: string[];
+};
+
 const STANDARD_OFFER_OPTIONS = {
     icerestart: 'IceRestart',
     offertoreceiveaudio: 'OfferToReceiveAudio',
@@ -148,6 +155,102 @@ export function deepClone<T>(obj: T): T {
     return JSON.parse(JSON.stringify(obj));
 }
 
+/**
+ * Parses a stats report serialized by the native side. It is either an array
+ * of [id, stats] entries or, in the compact encoding used on Android when
+ * enabled, an object holding the member names once and the stats referring
+ * to them by index.
+ *
+ * @param data - serialized stats report
+ * @param filter - stats filter, which is applied here unless it was already
+ * applied natively (on Android)
+ * @return {Map} the stats report
+ */
+export function parseStatsReport(data: string, filter?: RTCStatsFilter): Map<string, any> {
+    const parsed = JSON.parse(data);
+    let report: Map<string, any>;
+
+    if (Array.isArray(parsed)) {
+        report = new Map(parsed);
+    } else {
+        const { keys, stats } = parsed;
+
+        report = new Map();
+
+        for (const [ id, type, timestamp, members ] of stats) {
+            const entry = { timestamp, type, id };
+
+            for (let i = 0; i < members.length; i += 2) {
+                entry[keys[members[i]]] = members[i + 1];
+            }
+
+            report.set(id, entry);
+        }
+    }
+
+    return Platform.OS === 'android' ? report : filterStatsReport(report, filter);
+}
+
+/**
+ * Applies a stats filter to a full stats report, the way it is done natively on Android.
+ *
+ * @param report - stats report
+ * @param filter - stats filter
+ * @return {Map} the filtered stats report
+ */
+export function filterStatsReport(report: Map<string, any>, filter?: RTCStatsFilter): Map<string, any> {
+    if (!filter) {
+        return report;
+    }
+
+    const { types, members } = filter;
+    const filtered = new Map();
+
+    for (const [ id, stats ] of report) {
+        if (types && !types.includes(stats.type)) {
+            continue;
+        }
+
+        if (members) {
+            const { timestamp, type } = stats;
+            const entry = { timestamp, type, id: stats.id };
+
+            for (const name of members) {
+                if (name in stats) {
+                    entry[name] = stats[name];
+                }
+            }
+
+            filtered.set(id, entry);
+        } else {
+            filtered.set(id, stats);
+        }
+    }
+
+    return filtered;
+}
+
+/**
+ * Applies a stats delta, as emitted by the native stats subscriptions, to a
+ * stats report.
+ *
+ * @param report - stats report to update
+ * @param data - serialized delta
+ */
+export function applyStatsDelta(report: Map<string, any>, data: string): void {
+    const { changed, removed } = JSON.parse(data);
+
+    for (const [ id, entry ] of changed) {
+        const existing = report.get(id);
+
+        report.set(id, existing ? { ...existing, ...entry } : entry);
+    }
+
+    for (const id of removed) {
+        report.delete(id);
+    }
+}
+
 /**
  * Checks whether an SDP type is valid or not.
  *
@@ -61,6 +61,33 @@ export interface RTCVideoViewProps extends ViewProps {
    */
   zOrder?: number;
 
+  /**
+   * Caps the frame rate at which this view renders based on its on-screen size
+   * and visibility: small views (such as gallery tiles) are rendered at a
+   * reduced frame rate and views which are not visible (for example scrolled
+   * out of a list) are not rendered at all. Saves GPU and battery when many
+   * views are shown.
+   *
+   * Android only. Defaults to false.
+   *
+   * renderBudget: boolean
+   */
+  renderBudget?: boolean;
+
+  /**
+   * The kind of view the video is rendered into:
+   *
+   * - 'surface' (the default): a SurfaceView, which is the most efficient but
+   *   is composited separately from the other views.
+   * - 'texture': a TextureView, which is composited like any other view, so it
+   *   can be transformed, clipped and overlapped (for example in scrolling
+   *   lists or with animations). zOrder has no effect on it.
+   *
+   * Android only.
+   *
+   * renderer: 'surface' | 'texture'
+   */
+  renderer?: 'surface' | 'texture';
 
   /**
    * Picture in picture options for this view. Disabled if not supplied.
@@ -17,6 +17,7 @@ import MediaStreamTrackEvent from './MediaStreamTrackEvent';
 import permissions from './Permissions';
 import RTCAudioSession from './RTCAudioSession';
 import RTCCertificate from './RTCCertificate';
+import RTCCompositeView, { type RTCCompositeViewProps, type RTCCompositeViewTile } from './RTCCompositeView';
 import RTCErrorEvent from './RTCErrorEvent';
 import RTCIceCandidate from './RTCIceCandidate';
 import RTCPIPView, { startIOSPIP, stopIOSPIP } from './RTCPIPView';
@@ -41,6 +42,7 @@ export {
     RTCSessionDescription,
     RTCCertificate,
     RTCView,
+    RTCCompositeView,
     RTCPIPView,
     ScreenCapturePickerView,
     RTCRtpEncodingParameters,
@@ -56,6 +58,8 @@ export {
     type RTCRtpEncodingParametersInit,
     type RTCRtpSendParametersInit,
     type RTCVideoViewProps,
+    type RTCCompositeViewProps,
+    type RTCCompositeViewTile,
     type RTCIOSPIPOptions,
     mediaDevices,
     permissions,